@@ -24,6 +24,7 @@ public class HealthController {
         healthStatus.put("application", "audio-resource-provider");
         healthStatus.put("main_app_connectivity", accessService.isHealthy());
         healthStatus.put("circuit_breaker_failures", accessService.getFailureCount());
+        healthStatus.put("circuit_breaker_state", accessService.getCircuitBreakerState());
         healthStatus.put("timestamp", System.currentTimeMillis());
         return healthStatus;
     }
@@ -0,0 +1,394 @@
+
+package com.replit.audio;
+
+import com.replit.audio.FileMetadataCache.FileMetadata;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * In-memory index of the audio directory ({@code audio.catalog.*}). Files may sit directly
+ * in the directory or in any depth of shard subdirectories (e.g. {@code ab/cd/<id>.mp3});
+ * the index maps each resource id to its location, size, modification time and optionally
+ * a CRC32C of its content.
+ *
+ * <p>The index is built in the background at startup, one task per top-level directory on
+ * a dedicated pool. A {@link WatchService} then applies creations, changes and deletions
+ * incrementally; if the watcher overflows, the index is rebuilt. A shard directory that is
+ * deleted or moved out of the tree takes all its entries (and watches) with it. Until the first build
+ * completes {@link #isReady()} is false and callers resolve files on disk as before.
+ */
+@Component
+public class AudioCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioCatalog.class);
+
+    private static final String EXTENSION = ".mp3";
+    private static final Pattern RESOURCE_ID = Pattern.compile("^[a-zA-Z0-9_-]{1,50}$");
+
+    @Value("${audio.directory:audio-files}")
+    private String audioDirectory;
+
+    @Value("${audio.catalog.enabled:false}")
+    private boolean enabled;
+
+    @Value("${audio.catalog.build-parallelism:0}")
+    private int buildParallelism;
+
+    // Reads every byte of every file, so it makes builds I/O-bound; off by default
+    @Value("${audio.catalog.content-hash:false}")
+    private boolean contentHash;
+
+    private Path root;
+    private volatile CatalogIndex index = new CatalogIndex(0);
+    private volatile boolean ready;
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private Thread watcherThread;
+
+    // Metrics
+    private final Counter updateCounter;
+    private final Counter rebuildCounter;
+    private final Counter missCounter;
+    private final Timer buildTimer;
+
+    public AudioCatalog(MeterRegistry meterRegistry) {
+        this.updateCounter = Counter.builder("audio_catalog_updates_total")
+                .description("Total number of catalog entries added, changed or removed by the filesystem watcher")
+                .register(meterRegistry);
+        this.rebuildCounter = Counter.builder("audio_catalog_rebuilds_total")
+                .description("Total number of full catalog rebuilds after the watcher lost events")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("audio_catalog_misses_total")
+                .description("Total number of audio requests answered 404 from the catalog without touching disk")
+                .register(meterRegistry);
+        this.buildTimer = Timer.builder("audio_catalog_build_duration")
+                .description("Time spent scanning the audio directory to build the catalog")
+                .register(meterRegistry);
+        Gauge.builder("audio_catalog_entries", this, catalog -> catalog.index.size())
+                .description("Number of audio files in the catalog")
+                .register(meterRegistry);
+        Gauge.builder("audio_catalog_ready", this, catalog -> catalog.ready ? 1 : 0)
+                .description("1 once the catalog has been built and serves lookups")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        root = Paths.get(audioDirectory).toAbsolutePath().normalize();
+        watchService = FileSystems.getDefault().newWatchService();
+        watcherThread = new Thread(this::run, "AudioCatalog-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        logger.info("Audio catalog enabled for {}, contentHash={}", root, contentHash);
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Location and metadata of the resource, or null if the catalog has no such file.
+     * Only meaningful once {@link #isReady()}.
+     */
+    public CatalogEntry lookup(String resourceId) {
+        CatalogIndex.Entry entry = index.get(resourceId);
+        if (entry == null) {
+            missCounter.increment();
+            return null;
+        }
+        Path path = root.resolve(entry.shardDir()).resolve(resourceId + EXTENSION);
+        return new CatalogEntry(path, entry.size(), entry.lastModified(), entry.contentHash());
+    }
+
+    public record CatalogEntry(Path path, long size, long lastModified, long contentHash) {
+
+        public FileMetadata metadata() {
+            return contentHash != 0
+                    ? FileMetadata.ofContent(size, lastModified, contentHash)
+                    : FileMetadata.of(size, lastModified);
+        }
+    }
+
+    // Watches are registered while scanning, before any event is read, so nothing that
+    // changes during a build is missed; replaying an event is harmless since it re-stats
+    private void run() {
+        try {
+            rebuild();
+            while (true) {
+                WatchKey key = watchService.take();
+                if (processEvents(key)) {
+                    rebuildCounter.increment();
+                    rebuild();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Audio catalog watcher stopped");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Stale answers are worse than disk lookups
+            ready = false;
+            logger.error("Audio catalog watcher failed, falling back to disk lookups: {}", e.getMessage(), e);
+        }
+    }
+
+    private void rebuild() {
+        long startedAt = System.nanoTime();
+        Queue<ScannedFile> scanned = new ConcurrentLinkedQueue<>();
+        List<Path> directories = new ArrayList<>();
+        directories.add(null);
+        try (Stream<Path> children = Files.list(root)) {
+            children.filter(child -> Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)).forEach(directories::add);
+        } catch (IOException e) {
+            logger.error("Cannot list audio directory {}: {}", root, e.getMessage());
+            ready = false;
+            return;
+        }
+
+        int parallelism = buildParallelism > 0 ? buildParallelism : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // null stands for the files directly in the root, which is not walked recursively
+            pool.submit(() -> directories.parallelStream().forEach(directory -> {
+                if (directory == null) {
+                    scanDirectory(root, false, scanned::add);
+                } else {
+                    scanDirectory(directory, true, scanned::add);
+                }
+            })).get();
+        } catch (Exception e) {
+            logger.error("Audio catalog scan of {} failed: {}", root, e.getMessage());
+            ready = false;
+            return;
+        } finally {
+            pool.shutdown();
+        }
+
+        CatalogIndex rebuilt = new CatalogIndex(scanned.size());
+        for (ScannedFile file : scanned) {
+            rebuilt.put(file.resourceId(), file.shardDir(), file.size(), file.lastModified(), file.contentHash());
+        }
+        index = rebuilt;
+        ready = true;
+
+        long elapsed = System.nanoTime() - startedAt;
+        buildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.info("Audio catalog built: {} files in {} directories in {} ms",
+                rebuilt.size(), watchedDirectories.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private void scanDirectory(Path directory, boolean recursive, Consumer<ScannedFile> sink) {
+        try {
+            Files.walkFileTree(directory, Set.of(), recursive ? Integer.MAX_VALUE : 1, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                    register(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    ScannedFile entry = scan(file, attributes);
+                    if (entry != null) {
+                        sink.accept(entry);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Skipping {} in audio catalog: {}", file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Cannot scan {} for the audio catalog: {}", directory, e.getMessage());
+        }
+    }
+
+    private void register(Path directory) throws IOException {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirectories.put(key, directory);
+    }
+
+    /**
+     * Applies one directory's pending events to the index. Returns true if events were lost
+     * and the index must be rebuilt.
+     */
+    private boolean processEvents(WatchKey key) {
+        Path directory = watchedDirectories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && watchedDirectories.containsValue(child)) {
+                // A whole shard went away; there is no event per file inside it
+                forget(child);
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // A new shard: its files may have been created before the watch was in place
+                scanDirectory(child, true, this::apply);
+                continue;
+            }
+            refresh(child);
+        }
+        if (!key.reset()) {
+            // The directory is gone or no longer accessible
+            watchedDirectories.remove(key);
+            if (directory != null) {
+                forget(directory);
+            }
+        }
+        return overflow;
+    }
+
+    // Drops the index entries and watches of a directory and everything beneath it. A moved
+    // directory keeps its watch on Linux, which would otherwise report events under the old path.
+    private void forget(Path directory) {
+        watchedDirectories.entrySet().removeIf(watched -> {
+            if (!watched.getValue().startsWith(directory)) {
+                return false;
+            }
+            watched.getKey().cancel();
+            return true;
+        });
+        int removed = index.removeShard(root.relativize(directory).toString());
+        if (removed > 0) {
+            updateCounter.increment(removed);
+            logger.info("Removed {} catalog entries under {}", removed, directory);
+        }
+    }
+
+    private void refresh(Path file) {
+        String resourceId = resourceIdOf(file);
+        if (resourceId == null) {
+            return;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            ScannedFile entry = scan(file, attributes);
+            if (entry != null) {
+                apply(entry);
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted or renamed away
+        } catch (IOException e) {
+            logger.warn("Cannot stat {} for the audio catalog: {}", file, e.getMessage());
+        }
+        if (index.remove(resourceId, shardDirOf(file))) {
+            updateCounter.increment();
+        }
+    }
+
+    private void apply(ScannedFile file) {
+        index.put(file.resourceId(), file.shardDir(), file.size(), file.lastModified(), file.contentHash());
+        updateCounter.increment();
+    }
+
+    private ScannedFile scan(Path file, BasicFileAttributes attributes) {
+        String resourceId = resourceIdOf(file);
+        if (resourceId == null || !attributes.isRegularFile()) {
+            return null;
+        }
+        long hash = 0;
+        if (contentHash) {
+            try {
+                hash = crc32c(file);
+            } catch (IOException e) {
+                logger.warn("Cannot hash {} for the audio catalog: {}", file, e.getMessage());
+            }
+        }
+        return new ScannedFile(resourceId, shardDirOf(file), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), hash);
+    }
+
+    private String shardDirOf(Path file) {
+        return root.relativize(file.getParent()).toString();
+    }
+
+    private static String resourceIdOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(EXTENSION)) {
+            return null;
+        }
+        String resourceId = name.substring(0, name.length() - EXTENSION.length());
+        return RESOURCE_ID.matcher(resourceId).matches() ? resourceId : null;
+    }
+
+    // 0 is reserved for "not hashed", so a genuine zero checksum is stored as 1
+    private static long crc32c(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        long value = crc.getValue();
+        return value == 0 ? 1 : value;
+    }
+
+    private record ScannedFile(String resourceId, String shardDir, long size, long lastModified, long contentHash) {
+    }
+}
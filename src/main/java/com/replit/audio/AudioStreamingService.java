@@ -0,0 +1,293 @@
+
+package com.replit.audio;
+
+import com.replit.audio.FileMetadataCache.FileMetadata;
+import com.replit.storage.ResourceStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Builds audio responses with HTTP range support (RFC 7233): {@code Accept-Ranges},
+ * single ranges as 206 with {@code Content-Range}, multiple ranges as
+ * {@code multipart/byteranges}, {@code If-Range}, and 416 for unsatisfiable ranges.
+ * Files are located through the configured {@link ResourceStore}, which also supplies the
+ * validators (strong ETag, Last-Modified); matching conditional requests get 304. Access
+ * must already have been granted by the caller.
+ *
+ * <p>Whole files and single ranges of at least {@code audio.stream.zero-copy.min-size} are
+ * returned as {@link ZeroCopyFileRegion} bodies (sendfile or {@code transferTo}); smaller
+ * files, multipart ranges and {@code audio.stream.zero-copy.enabled=false} use resources.
+ * Files held by the {@link HotFileCache} are served from its buffers instead.
+ *
+ * <p>Responses are futures. When the store answers at once (local files, cached objects)
+ * the response is built on the calling thread and returned completed, which keeps sendfile
+ * available; otherwise it is built on the async executor once the store completes.
+ */
+@Service
+public class AudioStreamingService {
+
+    public static final MediaType AUDIO_MPEG = MediaType.parseMediaType("audio/mpeg");
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioStreamingService.class);
+
+    @Value("${audio.stream.zero-copy.enabled:true}")
+    private boolean zeroCopyEnabled;
+
+    // Below this size the copy is cheaper than setting up sendfile
+    @Value("${audio.stream.zero-copy.min-size:48KB}")
+    private DataSize zeroCopyMinSize;
+
+    // Audio is per-user authorized content: shared caches must not store it, and the
+    // browser revalidates so that access is re-checked on every play
+    @Value("${audio.stream.cache-control:private, no-cache}")
+    private String cacheControl;
+
+    private final ResourceStore resourceStore;
+    private final HotFileCache hotFileCache;
+    private final Executor responseExecutor;
+
+    public AudioStreamingService(ResourceStore resourceStore, HotFileCache hotFileCache,
+                                 @Qualifier("asyncExecutor") Executor responseExecutor) {
+        this.resourceStore = resourceStore;
+        this.hotFileCache = hotFileCache;
+        this.responseExecutor = responseExecutor;
+    }
+
+    /**
+     * A located audio file and its current metadata.
+     */
+    public record AudioFile(String resourceId, Path path, FileMetadata metadata) {
+    }
+
+    /**
+     * Finds the file of a resource in the resource store. Completes with null if there is no
+     * such resource, exceptionally if the store cannot be read.
+     */
+    public CompletableFuture<AudioFile> locate(String resourceId) {
+        // Security: Prevent directory traversal
+        String sanitizedResourceId = resourceId.replaceAll("[^a-zA-Z0-9_-]", "");
+        CompletableFuture<ResourceStore.StoredObject> stored;
+        try {
+            stored = resourceStore.open(sanitizedResourceId);
+        } catch (RuntimeException e) {
+            stored = CompletableFuture.failedFuture(e);
+        }
+        return stored
+                .whenComplete((object, error) -> {
+                    if (error != null) {
+                        logger.error("Cannot open audio resource {}: {}", sanitizedResourceId, error.getMessage());
+                    }
+                })
+                .thenApply(object -> object != null
+                        ? new AudioFile(sanitizedResourceId, object.path(), object.metadata())
+                        : null);
+    }
+
+    /**
+     * Locates a resource and builds the response for it with {@code respond}, or 404. The
+     * response is built on the calling thread if the file is available at once, otherwise
+     * on the async executor, never on the store client's threads.
+     */
+    public CompletableFuture<ResponseEntity<?>> respondWithFile(String resourceId,
+                                                                Function<AudioFile, ResponseEntity<?>> respond) {
+        Function<AudioFile, ResponseEntity<?>> build =
+                file -> file != null ? respond.apply(file) : ResponseEntity.notFound().build();
+        CompletableFuture<AudioFile> located = locate(resourceId);
+        if (located.isDone()) {
+            try {
+                return CompletableFuture.completedFuture(build.apply(located.join()));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return located.thenApplyAsync(build, responseExecutor);
+    }
+
+    public CompletableFuture<ResponseEntity<?>> buildResponse(String resourceId, HttpHeaders requestHeaders,
+                                                              boolean inline) {
+        return respondWithFile(resourceId, audioFile -> buildResponse(audioFile, requestHeaders, inline));
+    }
+
+    private ResponseEntity<?> buildResponse(AudioFile audioFile, HttpHeaders requestHeaders, boolean inline) {
+        String sanitizedResourceId = audioFile.resourceId();
+        Path audioFilePath = audioFile.path();
+        FileMetadata metadata = audioFile.metadata();
+        long length = metadata.size();
+        long lastModified = metadata.lastModified();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(metadata.etag());
+        headers.setLastModified(lastModified);
+        headers.setCacheControl(cacheControl);
+        if (notModified(requestHeaders, metadata.etag(), lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setContentDisposition((inline ? ContentDisposition.inline() : ContentDisposition.attachment())
+                .filename(sanitizedResourceId + ".mp3")
+                .build());
+        headers.add("X-Content-Type-Options", "nosniff");
+        headers.add("X-Frame-Options", "DENY");
+
+        String range = requestHeaders.getFirst(HttpHeaders.RANGE);
+        // Popular files come from off-heap buffers; the rest from disk, zero-copy when large enough
+        ByteBufferResource cached = hotFileCache.lookup(audioFilePath, length, lastModified);
+        Resource fileResource = cached != null ? cached : new FileSystemResource(audioFilePath);
+        boolean zeroCopy = cached == null && zeroCopyEnabled && length >= zeroCopyMinSize.toBytes();
+        if (range == null) {
+            return wholeFile(headers, audioFilePath, fileResource, length, zeroCopy, false);
+        }
+        if (!ifRangeMatches(requestHeaders, metadata)) {
+            // The client's copy is outdated: send the whole current file instead of the range
+            return wholeFile(headers, audioFilePath, fileResource, length, zeroCopy, true);
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored (RFC 7233, section 3.1)
+            logger.debug("Ignoring malformed Range header '{}': {}", range, e.getMessage());
+            ranges = List.of();
+        }
+        if (ranges.isEmpty()) {
+            return wholeFile(headers, audioFilePath, fileResource, length, zeroCopy, true);
+        }
+
+        try {
+            if (ranges.size() == 1 && zeroCopy) {
+                long start = ranges.get(0).getRangeStart(length);
+                long end = Math.min(ranges.get(0).getRangeEnd(length), length - 1);
+                if (start >= length || start > end) {
+                    throw new IllegalArgumentException("Range starts beyond the end of the file");
+                }
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+                return zeroCopyResponse(HttpStatus.PARTIAL_CONTENT, headers,
+                        new ZeroCopyFileRegion(audioFilePath, start, end - start + 1));
+            }
+            if (ranges.size() == 1) {
+                ResourceRegion region = ranges.get(0).toResourceRegion(fileResource);
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .headers(headers)
+                        .contentType(AUDIO_MPEG)
+                        .body(region);
+            }
+            // The region converter writes multipart/byteranges with its own boundary content type
+            List<ResourceRegion> regions = HttpRange.toResourceRegions(ranges, fileResource);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(headers)
+                    .body(regions);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Unsatisfiable Range '{}' for {} ({} bytes)", range, sanitizedResourceId, length);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
+        }
+    }
+
+    private static ResponseEntity<?> wholeFile(HttpHeaders headers, Path path, Resource resource, long length,
+                                               boolean zeroCopy, boolean rangeRequested) {
+        if (zeroCopy) {
+            return zeroCopyResponse(HttpStatus.OK, headers, new ZeroCopyFileRegion(path, 0, length));
+        }
+        return rangeRequested
+                ? fullResponseIgnoringRange(headers, resource, length)
+                : fullResponse(headers, resource, length);
+    }
+
+    private static ResponseEntity<?> zeroCopyResponse(HttpStatus status, HttpHeaders headers, ZeroCopyFileRegion region) {
+        return ResponseEntity.status(status)
+                .headers(headers)
+                .contentType(AUDIO_MPEG)
+                .contentLength(region.count())
+                .body(region);
+    }
+
+    private static ResponseEntity<?> fullResponse(HttpHeaders headers, Resource resource, long length) {
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentType(AUDIO_MPEG)
+                .contentLength(length)
+                .body(resource);
+    }
+
+    // Spring MVC applies the request's Range header to any Resource body except an
+    // InputStreamResource, so that is what carries a full body that must ignore it
+    private static ResponseEntity<?> fullResponseIgnoringRange(HttpHeaders headers, Resource resource, long length) {
+        try {
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .contentType(AUDIO_MPEG)
+                    .contentLength(length)
+                    .body(new InputStreamResource(resource.getInputStream()));
+        } catch (IOException e) {
+            logger.error("Cannot open audio file {}: {}", resource.getDescription(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Evaluates If-None-Match (weak comparison, RFC 7232 section 3.2) or, only when that is
+     * absent, If-Modified-Since against the response's validators.
+     */
+    static boolean notModified(HttpHeaders requestHeaders, String etag, long lastModified) {
+        List<String> ifNoneMatch;
+        try {
+            ifNoneMatch = requestHeaders.getIfNoneMatch();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!ifNoneMatch.isEmpty()) {
+            String current = opaqueTag(etag);
+            return ifNoneMatch.stream().anyMatch(tag -> "*".equals(tag) || opaqueTag(tag).equals(current));
+        }
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * If-Range holds either an entity tag, which must match the current strong ETag exactly,
+     * or an HTTP date, which must equal Last-Modified (second precision).
+     */
+    private static boolean ifRangeMatches(HttpHeaders requestHeaders, FileMetadata metadata) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(metadata.etag());
+        }
+        try {
+            long date = requestHeaders.getFirstDate(HttpHeaders.IF_RANGE);
+            return date >= 0 && date / 1000 == metadata.lastModified() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+
+package com.replit.audio;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only {@link org.springframework.core.io.Resource} over a cached buffer, so the
+ * resource and region converters can serve whole files and ranges from memory. Each
+ * stream works on its own duplicate; skipping to a range start is a position change.
+ */
+public class ByteBufferResource extends AbstractResource {
+
+    private final ByteBuffer buffer;
+    private final String filename;
+    private final long lastModified;
+
+    public ByteBufferResource(ByteBuffer buffer, String filename, long lastModified) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.filename = filename;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * A resource over {@code length} bytes starting at {@code offset}, sharing this buffer.
+     */
+    public ByteBufferResource slice(long offset, long length) {
+        return new ByteBufferResource(buffer.slice(Math.toIntExact(offset), Math.toIntExact(length)), filename, lastModified);
+    }
+
+    /**
+     * A read-only view of the bytes, for writers that take buffers rather than streams.
+     */
+    public ByteBuffer asByteBuffer() {
+        return buffer.duplicate();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Cached buffer [" + filename + "]";
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    @Override
+    public long contentLength() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public boolean isFile() {
+        return false;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+
+package com.replit.audio;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing hash table from resource id to file metadata, stored in parallel
+ * primitive arrays. Keys are 64-bit hashes of the id; the id bytes themselves live in one
+ * shared byte arena so collisions are resolved exactly without a String per entry.
+ *
+ * <p>Lookups are optimistic reads under a {@link StampedLock} and never block on each
+ * other; updates from the filesystem watcher take the write lock.
+ *
+ * <p>Removed entries leave a tombstone slot and their id bytes in the arena. Tombstones
+ * count towards the load factor; once removed ids make up more than half of the arena, the
+ * next insert rebuilds the table, so churn from the watcher cannot grow it without bound.
+ */
+final class CatalogIndex {
+
+    private static final long EMPTY = 0L;
+    private static final long DELETED = 1L;
+    private static final double MAX_LOAD = 0.6;
+    private static final double MAX_ARENA_GARBAGE = 0.5;
+    private static final int MIN_ARENA_GARBAGE = 4096;
+
+    private final StampedLock lock = new StampedLock();
+    private Table table;
+    // Directories relative to the catalog root, addressed by shard number
+    private String[] shardDirs = new String[0];
+    private final Map<String, Integer> shardNumbers = new HashMap<>();
+
+    CatalogIndex(int expectedEntries) {
+        this.table = new Table(capacityFor(expectedEntries), 16 * Math.max(16, expectedEntries));
+    }
+
+    record Entry(String shardDir, long size, long lastModified, long contentHash) {
+    }
+
+    Entry get(String resourceId) {
+        byte[] id = resourceId.getBytes(StandardCharsets.US_ASCII);
+        long key = keyOf(id);
+
+        long stamp = lock.tryOptimisticRead();
+        Entry entry = find(id, key);
+        if (lock.validate(stamp)) {
+            return entry;
+        }
+        stamp = lock.readLock();
+        try {
+            return find(id, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void put(String resourceId, String shardDir, long size, long lastModified, long contentHash) {
+        byte[] id = resourceId.getBytes(StandardCharsets.US_ASCII);
+        long key = keyOf(id);
+
+        long stamp = lock.writeLock();
+        try {
+            int shard = shardNumber(shardDir);
+            Table t = table;
+            if (t.used + 1 > t.keys.length * MAX_LOAD || t.arenaGarbage > garbageLimit(t)) {
+                t = table = rehash(t, t.count + 1);
+            }
+
+            int mask = t.keys.length - 1;
+            int slot = (int) key & mask;
+            int firstDeleted = -1;
+            while (t.keys[slot] != EMPTY) {
+                if (t.keys[slot] == DELETED) {
+                    if (firstDeleted < 0) {
+                        firstDeleted = slot;
+                    }
+                } else if (t.keys[slot] == key && idEquals(t, slot, id)) {
+                    t.shards[slot] = shard;
+                    t.sizes[slot] = size;
+                    t.mtimes[slot] = lastModified;
+                    t.hashes[slot] = contentHash;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            int target = firstDeleted >= 0 ? firstDeleted : slot;
+            if (firstDeleted < 0) {
+                t.used++;
+            }
+            t.count++;
+            store(t, target, key, id, shard, size, lastModified, contentHash);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the entry if it is currently stored under {@code shardDir}; a file deleted from
+     * one shard does not remove a same-named file indexed from another.
+     */
+    boolean remove(String resourceId, String shardDir) {
+        byte[] id = resourceId.getBytes(StandardCharsets.US_ASCII);
+        long key = keyOf(id);
+
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int slot = (int) key & mask;
+            while (t.keys[slot] != EMPTY) {
+                if (t.keys[slot] == key && idEquals(t, slot, id)) {
+                    if (!shardDirs[t.shards[slot]].equals(shardDir)) {
+                        return false;
+                    }
+                    t.keys[slot] = DELETED;
+                    t.count--;
+                    t.arenaGarbage += t.idLengths[slot] & 0xFF;
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes every entry stored under {@code shardDir} or any directory beneath it (all of
+     * them for the empty root), e.g. after the directory was deleted or moved away. Walks the
+     * whole table, so it is meant for directory-level events only. Returns how many were removed.
+     */
+    int removeShard(String shardDir) {
+        long stamp = lock.writeLock();
+        try {
+            boolean[] matching = new boolean[shardDirs.length];
+            boolean any = false;
+            for (int shard = 0; shard < shardDirs.length; shard++) {
+                String dir = shardDirs[shard];
+                matching[shard] = shardDir.isEmpty() || dir.equals(shardDir) || dir.startsWith(shardDir + File.separator);
+                any |= matching[shard];
+            }
+            if (!any) {
+                return 0;
+            }
+
+            Table t = table;
+            int removed = 0;
+            for (int slot = 0; slot < t.keys.length; slot++) {
+                if (t.keys[slot] != EMPTY && t.keys[slot] != DELETED && matching[t.shards[slot]]) {
+                    t.keys[slot] = DELETED;
+                    t.count--;
+                    t.arenaGarbage += t.idLengths[slot] & 0xFF;
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return table.count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int arenaBytes() {
+        long stamp = lock.readLock();
+        try {
+            return table.arenaUsed;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Written to tolerate torn state during an optimistic read: bounds are checked instead of
+    // trusted, and the caller discards the result unless the stamp validates
+    private Entry find(byte[] id, long key) {
+        Table t = table;
+        String[] dirs = shardDirs;
+        long[] keys = t.keys;
+        int mask = keys.length - 1;
+        int slot = (int) key & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long current = keys[slot];
+            if (current == EMPTY) {
+                return null;
+            }
+            if (current == key && idEquals(t, slot, id)) {
+                int shard = t.shards[slot];
+                if (shard < 0 || shard >= dirs.length) {
+                    return null;
+                }
+                return new Entry(dirs[shard], t.sizes[slot], t.mtimes[slot], t.hashes[slot]);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private int shardNumber(String shardDir) {
+        Integer existing = shardNumbers.get(shardDir);
+        if (existing != null) {
+            return existing;
+        }
+        int shard = shardDirs.length;
+        String[] dirs = Arrays.copyOf(shardDirs, shard + 1);
+        dirs[shard] = shardDir;
+        shardDirs = dirs;
+        shardNumbers.put(shardDir, shard);
+        return shard;
+    }
+
+    // Rebuilding also compacts the arena, dropping the ids of removed entries
+    private static Table rehash(Table old, int minEntries) {
+        Table t = new Table(capacityFor(Math.max(minEntries, old.count) * 2), Math.max(16, old.arenaUsed - old.arenaGarbage));
+        int mask = t.keys.length - 1;
+        for (int i = 0; i < old.keys.length; i++) {
+            long key = old.keys[i];
+            if (key == EMPTY || key == DELETED) {
+                continue;
+            }
+            byte[] id = Arrays.copyOfRange(old.arena, old.idOffsets[i], old.idOffsets[i] + (old.idLengths[i] & 0xFF));
+            int slot = (int) key & mask;
+            while (t.keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            store(t, slot, key, id, old.shards[i], old.sizes[i], old.mtimes[i], old.hashes[i]);
+            t.used++;
+            t.count++;
+        }
+        return t;
+    }
+
+    private static void store(Table t, int slot, long key, byte[] id, int shard,
+                              long size, long lastModified, long contentHash) {
+        if (t.arenaUsed + id.length > t.arena.length) {
+            t.arena = Arrays.copyOf(t.arena, Math.max(t.arena.length * 2, t.arenaUsed + id.length));
+        }
+        System.arraycopy(id, 0, t.arena, t.arenaUsed, id.length);
+        t.idOffsets[slot] = t.arenaUsed;
+        t.idLengths[slot] = (byte) id.length;
+        t.arenaUsed += id.length;
+        t.shards[slot] = shard;
+        t.sizes[slot] = size;
+        t.mtimes[slot] = lastModified;
+        t.hashes[slot] = contentHash;
+        t.keys[slot] = key;
+    }
+
+    private static boolean idEquals(Table t, int slot, byte[] id) {
+        byte[] arena = t.arena;
+        int offset = t.idOffsets[slot];
+        int length = t.idLengths[slot] & 0xFF;
+        if (length != id.length || offset < 0 || offset + length > arena.length) {
+            return false;
+        }
+        return Arrays.equals(arena, offset, offset + length, id, 0, length);
+    }
+
+    // FNV-1a followed by a murmur finalizer; 0 and 1 are reserved slot markers
+    private static long keyOf(byte[] id) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : id) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == EMPTY || hash == DELETED ? hash + 2 : hash;
+    }
+
+    private static double garbageLimit(Table t) {
+        return Math.max(MIN_ARENA_GARBAGE, t.arenaUsed * MAX_ARENA_GARBAGE);
+    }
+
+    private static int capacityFor(int entries) {
+        int needed = (int) Math.ceil(Math.max(16, entries) / MAX_LOAD);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final int[] shards;
+        final long[] sizes;
+        final long[] mtimes;
+        final long[] hashes;
+        final int[] idOffsets;
+        final byte[] idLengths;
+        byte[] arena;
+        int arenaUsed;
+        // Arena bytes of removed entries, reclaimed by the next rehash
+        int arenaGarbage;
+        int count;
+        // Occupied slots including deleted markers, which still lengthen probe chains
+        int used;
+
+        Table(int capacity, int arenaCapacity) {
+            this.keys = new long[capacity];
+            this.shards = new int[capacity];
+            this.sizes = new long[capacity];
+            this.mtimes = new long[capacity];
+            this.hashes = new long[capacity];
+            this.idOffsets = new int[capacity];
+            this.idLengths = new byte[capacity];
+            this.arena = new byte[arenaCapacity];
+        }
+    }
+}
@@ -0,0 +1,111 @@
+
+package com.replit.audio;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+
+/**
+ * Short-lived cache of audio file metadata. One attribute read replaces the separate
+ * exists/isFile/length/lastModified stats, and its result (including "missing") is reused
+ * for {@code audio.metadata-cache.ttl}, which bounds how long a replaced file can be
+ * described by its old validators.
+ */
+@Component
+public class FileMetadataCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileMetadataCache.class);
+
+    private final Cache<Path, FileMetadata> cache;
+
+    // Metrics
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public FileMetadataCache(
+            @Value("${audio.metadata-cache.ttl:PT2S}") Duration ttl,
+            @Value("${audio.metadata-cache.max-entries:10000}") long maxEntries,
+            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxEntries)
+                .build();
+
+        this.hitCounter = Counter.builder("audio_metadata_cache_hits_total")
+                .description("Total number of audio file metadata lookups served from cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("audio_metadata_cache_misses_total")
+                .description("Total number of audio file metadata lookups that read the filesystem")
+                .register(meterRegistry);
+        Gauge.builder("audio_metadata_cache_size", cache, Cache::estimatedSize)
+                .description("Number of audio file metadata entries currently cached")
+                .register(meterRegistry);
+
+        logger.info("File metadata cache ttl={}, maxEntries={}", ttl, maxEntries);
+    }
+
+    public FileMetadata get(Path path) {
+        FileMetadata metadata = cache.getIfPresent(path);
+        if (metadata != null) {
+            hitCounter.increment();
+            return metadata;
+        }
+        missCounter.increment();
+        return cache.get(path, FileMetadataCache::read);
+    }
+
+    public void invalidate(Path path) {
+        cache.invalidate(path);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static FileMetadata read(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return FileMetadata.MISSING;
+            }
+            return FileMetadata.of(attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            return FileMetadata.MISSING;
+        } catch (IOException e) {
+            logger.warn("Cannot read attributes of {}: {}", path, e.getMessage());
+            return FileMetadata.MISSING;
+        }
+    }
+
+    /**
+     * Size, modification time and a strong entity tag: derived from the content checksum when
+     * the catalog has one (stable across replicas), otherwise from size and modification time.
+     */
+    public record FileMetadata(boolean exists, long size, long lastModified, String etag) {
+
+        static final FileMetadata MISSING = new FileMetadata(false, 0, 0, null);
+
+        public static FileMetadata of(long size, long lastModified) {
+            return new FileMetadata(true, size, lastModified,
+                    "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"");
+        }
+
+        static FileMetadata ofContent(long size, long lastModified, long contentHash) {
+            return new FileMetadata(true, size, lastModified,
+                    "\"" + Long.toHexString(size) + "-c" + Long.toHexString(contentHash) + "\"");
+        }
+    }
+}
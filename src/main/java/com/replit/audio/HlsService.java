@@ -0,0 +1,208 @@
+
+package com.replit.audio;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.replit.audio.AudioStreamingService.AudioFile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segmented (HLS) delivery of MP3 files without transcoding: a VOD playlist per resource
+ * and segments of about {@code audio.hls.segment-duration} cut on MPEG frame boundaries.
+ * The boundaries are computed once per file version by {@link Mp3FrameScanner} and kept in
+ * a {@code .idx} file next to the audio file. Each segment has its own ETag, so clients,
+ * CDNs and the hot-file cache can hold segments independently.
+ */
+@Service
+public class HlsService {
+
+    public static final MediaType MPEGURL = MediaType.parseMediaType("application/vnd.apple.mpegurl");
+
+    private static final Logger logger = LoggerFactory.getLogger(HlsService.class);
+
+    private final AudioStreamingService streamingService;
+    private final HotFileCache hotFileCache;
+    private final long targetMicros;
+    private final boolean persistIndex;
+    private final String cacheControl;
+    private final Cache<IndexKey, SegmentIndex> indexes;
+
+    // Metrics
+    private final Counter segmentCounter;
+    private final Counter indexLoadCounter;
+    private final Timer indexBuildTimer;
+
+    public HlsService(
+            AudioStreamingService streamingService,
+            HotFileCache hotFileCache,
+            @Value("${audio.hls.segment-duration:PT6S}") Duration segmentDuration,
+            @Value("${audio.hls.persist-index:true}") boolean persistIndex,
+            @Value("${audio.hls.index-cache-size:1000}") long indexCacheSize,
+            @Value("${audio.stream.cache-control:private, no-cache}") String cacheControl,
+            MeterRegistry meterRegistry) {
+        this.streamingService = streamingService;
+        this.hotFileCache = hotFileCache;
+        this.targetMicros = TimeUnit.NANOSECONDS.toMicros(segmentDuration.toNanos());
+        this.persistIndex = persistIndex;
+        this.cacheControl = cacheControl;
+        this.indexes = Caffeine.newBuilder()
+                .maximumSize(indexCacheSize)
+                .build();
+
+        this.segmentCounter = Counter.builder("audio_hls_segments_total")
+                .description("Total number of HLS segments served")
+                .register(meterRegistry);
+        this.indexLoadCounter = Counter.builder("audio_hls_index_loads_total")
+                .description("Total number of segment indexes read from persisted .idx files")
+                .register(meterRegistry);
+        this.indexBuildTimer = Timer.builder("audio_hls_index_build_duration")
+                .description("Time spent scanning MP3 frames to build a segment index")
+                .register(meterRegistry);
+
+        logger.info("HLS segmentation: segmentDuration={}, persistIndex={}", segmentDuration, persistIndex);
+    }
+
+    public CompletableFuture<ResponseEntity<?>> playlist(String resourceId, HttpHeaders requestHeaders) {
+        return streamingService.respondWithFile(resourceId, file -> playlist(file, requestHeaders));
+    }
+
+    public CompletableFuture<ResponseEntity<?>> segment(String resourceId, int segment, HttpHeaders requestHeaders) {
+        return streamingService.respondWithFile(resourceId, file -> segment(file, segment, requestHeaders));
+    }
+
+    private ResponseEntity<?> playlist(AudioFile file, HttpHeaders requestHeaders) {
+        SegmentIndex index = indexFor(file);
+        if (index == null || index.segmentCount() == 0) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+
+        HttpHeaders headers = validators(file, "p" + Long.toHexString(index.targetMicros()));
+        if (AudioStreamingService.notModified(requestHeaders, headers.getETag(), file.metadata().lastModified())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
+        long longestMicros = 0;
+        for (int i = 0; i < index.segmentCount(); i++) {
+            longestMicros = Math.max(longestMicros, index.durationMicros(i));
+        }
+        StringBuilder playlist = new StringBuilder(64 + 32 * index.segmentCount());
+        playlist.append("#EXTM3U\n")
+                .append("#EXT-X-VERSION:3\n")
+                .append("#EXT-X-PLAYLIST-TYPE:VOD\n")
+                .append("#EXT-X-TARGETDURATION:").append((longestMicros + 999_999) / 1_000_000).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        for (int i = 0; i < index.segmentCount(); i++) {
+            playlist.append(String.format(Locale.ROOT, "#EXTINF:%.3f,", index.durationMicros(i) / 1_000_000.0))
+                    .append('\n')
+                    .append("segments/").append(i).append(".mp3\n");
+        }
+        playlist.append("#EXT-X-ENDLIST\n");
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentType(MPEGURL)
+                .body(playlist.toString());
+    }
+
+    private ResponseEntity<?> segment(AudioFile file, int segment, HttpHeaders requestHeaders) {
+        SegmentIndex index = indexFor(file);
+        if (index == null || segment < 0 || segment >= index.segmentCount()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        HttpHeaders headers = validators(file, "s" + segment);
+        if (AudioStreamingService.notModified(requestHeaders, headers.getETag(), file.metadata().lastModified())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        headers.add("X-Content-Type-Options", "nosniff");
+
+        long offset = index.offset(segment);
+        long length = index.length(segment);
+        segmentCounter.increment();
+
+        ByteBufferResource cached = hotFileCache.lookup(file.path(), file.metadata().size(), file.metadata().lastModified());
+        Object body = cached != null
+                ? cached.slice(offset, length)
+                : new ZeroCopyFileRegion(file.path(), offset, length);
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentType(AudioStreamingService.AUDIO_MPEG)
+                .contentLength(length)
+                .body(body);
+    }
+
+    // Entity tags of playlists and segments extend the file's tag, so they change with the file
+    private HttpHeaders validators(AudioFile file, String suffix) {
+        String fileTag = file.metadata().etag();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(fileTag.substring(0, fileTag.length() - 1) + "-" + suffix + "\"");
+        headers.setLastModified(file.metadata().lastModified());
+        headers.setCacheControl(cacheControl);
+        return headers;
+    }
+
+    private SegmentIndex indexFor(AudioFile file) {
+        IndexKey key = new IndexKey(file.path(), file.metadata().size(), file.metadata().lastModified());
+        try {
+            // Concurrent first requests for a file share one scan
+            return indexes.get(key, this::loadOrBuild);
+        } catch (UncheckedIOException e) {
+            logger.error("Cannot index MP3 frames of {}: {}", file.path(), e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private SegmentIndex loadOrBuild(IndexKey key) {
+        Path indexFile = SegmentIndex.pathFor(key.path());
+        try {
+            SegmentIndex persisted = SegmentIndex.read(indexFile, key.size(), key.lastModified(), targetMicros);
+            if (persisted != null) {
+                indexLoadCounter.increment();
+                return persisted;
+            }
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable segment index {}: {}", indexFile, e.getMessage());
+        }
+
+        long startedAt = System.nanoTime();
+        SegmentIndex index;
+        try {
+            index = Mp3FrameScanner.scan(key.path(), key.lastModified(), targetMicros);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        indexBuildTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        logger.info("Indexed {}: {} segments", key.path(), index.segmentCount());
+
+        if (persistIndex) {
+            try {
+                index.write(indexFile);
+            } catch (IOException e) {
+                // A read-only audio directory only costs a rescan after restart
+                logger.warn("Cannot persist segment index {}: {}", indexFile, e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    private record IndexKey(Path path, long size, long lastModified) {
+    }
+}
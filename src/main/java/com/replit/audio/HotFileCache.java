@@ -0,0 +1,201 @@
+
+package com.replit.audio;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional in-memory copy of popular audio files, held off-heap in direct or memory-mapped
+ * buffers under a byte budget ({@code audio.hot-cache.*}).
+ *
+ * <p>A file is only loaded after {@code admission-hits} requests within
+ * {@code admission-window}, so one-off plays never touch the cache. Once loaded, Caffeine's
+ * frequency-based (TinyLFU) policy decides what stays when the budget is exceeded. Every
+ * lookup compares size and modification time with the file on disk and drops stale copies.
+ *
+ * <p>Buffers are never freed explicitly: a response may still be sending an evicted copy,
+ * so its memory is returned by the GC once no response references it. The
+ * {@code audio_hot_cache_resident_bytes} gauge therefore counts the bytes the cache holds
+ * (logical bytes); actual off-heap usage, including evicted copies still in flight or not
+ * yet collected, is in {@code jvm_buffer_memory_used_bytes{id="direct"|"mapped"}}.
+ */
+@Component
+public class HotFileCache {
+
+    public enum BufferType {
+        DIRECT, MAPPED
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(HotFileCache.class);
+
+    private final boolean enabled;
+    private final long maxFileBytes;
+    private final int admissionHits;
+    private final BufferType bufferType;
+    private final Cache<Path, CachedFile> files;
+    // Request counts of files not (yet) cached, used for admission
+    private final Cache<Path, AtomicInteger> candidates;
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    // Metrics
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Counter invalidationCounter;
+
+    public HotFileCache(
+            @Value("${audio.hot-cache.enabled:false}") boolean enabled,
+            @Value("${audio.hot-cache.max-bytes:256MB}") DataSize maxBytes,
+            @Value("${audio.hot-cache.max-file-size:32MB}") DataSize maxFileSize,
+            @Value("${audio.hot-cache.admission-hits:3}") int admissionHits,
+            @Value("${audio.hot-cache.admission-window:PT10M}") Duration admissionWindow,
+            @Value("${audio.hot-cache.buffer-type:DIRECT}") BufferType bufferType,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxFileBytes = Math.min(maxFileSize.toBytes(), Integer.MAX_VALUE);
+        this.admissionHits = Math.max(1, admissionHits);
+        this.bufferType = bufferType;
+
+        this.hitCounter = Counter.builder("audio_hot_cache_hits_total")
+                .description("Total number of audio requests served from the hot-file cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("audio_hot_cache_misses_total")
+                .description("Total number of audio requests not found in the hot-file cache")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("audio_hot_cache_evictions_total")
+                .description("Total number of cached audio files evicted to stay within the byte budget")
+                .register(meterRegistry);
+        this.invalidationCounter = Counter.builder("audio_hot_cache_invalidations_total")
+                .description("Total number of cached audio files dropped because the file changed on disk")
+                .register(meterRegistry);
+
+        this.files = Caffeine.newBuilder()
+                .maximumWeight(maxBytes.toBytes())
+                .weigher((Path path, CachedFile file) -> (int) file.size())
+                // Listeners run on the caller, so the resident bytes gauge never lags a removal
+                .executor(Runnable::run)
+                .removalListener((Path path, CachedFile file, RemovalCause cause) -> {
+                    if (file != null) {
+                        residentBytes.addAndGet(-file.size());
+                    }
+                    if (cause.wasEvicted()) {
+                        evictionCounter.increment();
+                    }
+                })
+                .build();
+        this.candidates = Caffeine.newBuilder()
+                .expireAfterAccess(admissionWindow)
+                .maximumSize(10_000)
+                .build();
+
+        Gauge.builder("audio_hot_cache_resident_bytes", residentBytes, AtomicLong::get)
+                .description("Bytes of audio held by the hot-file cache (evicted buffers are freed later by the GC)")
+                .register(meterRegistry);
+        Gauge.builder("audio_hot_cache_entries", files, Cache::estimatedSize)
+                .description("Number of audio files currently held in the hot-file cache")
+                .register(meterRegistry);
+        Gauge.builder("audio_hot_cache_hit_ratio", this, HotFileCache::hitRatio)
+                .description("Share of audio requests served from the hot-file cache")
+                .register(meterRegistry);
+
+        logger.info("Hot-file cache enabled={}, maxBytes={}, maxFileSize={}, admissionHits={}, admissionWindow={}, bufferType={}",
+                enabled, maxBytes, maxFileSize, admissionHits, admissionWindow, bufferType);
+    }
+
+    /**
+     * Returns the cached contents of {@code path} if they match the given size and
+     * modification time, loading the file first once it has been requested often enough.
+     * Returns null when the request should be served from disk.
+     */
+    public ByteBufferResource lookup(Path path, long size, long lastModified) {
+        if (!enabled || size > maxFileBytes) {
+            return null;
+        }
+        Path key = path.toAbsolutePath().normalize();
+
+        CachedFile cached = files.getIfPresent(key);
+        if (cached != null && (cached.size() != size || cached.lastModified() != lastModified)) {
+            files.asMap().remove(key, cached);
+            invalidationCounter.increment();
+            cached = null;
+        }
+        if (cached != null) {
+            hitCounter.increment();
+            return cached.resource();
+        }
+        missCounter.increment();
+
+        AtomicInteger requests = candidates.get(key, ignored -> new AtomicInteger());
+        if (requests.incrementAndGet() < admissionHits) {
+            return null;
+        }
+        // Only the request that claims the candidate loads; concurrent ones keep reading from
+        // disk instead of waiting. The load runs outside Caffeine so it holds no map lock.
+        if (!candidates.asMap().remove(key, requests)) {
+            return null;
+        }
+        try {
+            cached = load(key, size, lastModified);
+        } catch (IOException e) {
+            logger.warn("Could not cache audio file {}: {}", key, e.getMessage());
+            return null;
+        }
+        residentBytes.addAndGet(size);
+        files.put(key, cached);
+        return cached.resource();
+    }
+
+    public void invalidateAll() {
+        files.invalidateAll();
+        candidates.invalidateAll();
+    }
+
+    private CachedFile load(Path path, long size, long lastModified) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer;
+            if (bufferType == BufferType.MAPPED) {
+                // Mapped pages follow the file, so files must be replaced (renamed), not rewritten in place
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocateDirect((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException("File " + path + " is shorter than " + size + " bytes");
+                    }
+                }
+                buffer.flip();
+            }
+            logger.debug("Cached audio file {} ({} bytes, {})", path, size, bufferType);
+            return new CachedFile(new ByteBufferResource(buffer, path.getFileName().toString(), lastModified),
+                    size, lastModified);
+        }
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private record CachedFile(ByteBufferResource resource, long size, long lastModified) {
+    }
+}
@@ -0,0 +1,157 @@
+
+package com.replit.audio;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Walks the MPEG audio frame headers of an MP3 file (MPEG 1/2/2.5, layers I-III) and cuts
+ * it into segments of about a target duration that start and end on frame boundaries.
+ * A leading ID3v2 tag is skipped; bytes that are not a frame (e.g. a trailing ID3v1 tag)
+ * are stepped over until the next header that is followed by another valid frame.
+ */
+final class Mp3FrameScanner {
+
+    // Bitrates in kbit/s by [MPEG1 ? 0 : 1][layer - 1][bitrate index]
+    private static final int[][][] BITRATES = {
+            {
+                    {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+                    {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+            },
+            {
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+            }
+    };
+    private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000};
+
+    private Mp3FrameScanner() {
+    }
+
+    static SegmentIndex scan(Path file, long lastModified, long targetMicros) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("MP3 file too large to index: " + file);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return segment(data, (int) size, lastModified, targetMicros);
+        }
+    }
+
+    private static SegmentIndex segment(MappedByteBuffer data, int size, long lastModified, long targetMicros) {
+        long[] boundaries = new long[16];
+        int[] durations = new int[16];
+        int segments = 0;
+
+        int position = id3v2Length(data, size);
+        int segmentStart = -1;
+        int segmentEnd = -1;
+        double segmentMicros = 0;
+        boolean locked = false;
+
+        while (position + 4 <= size) {
+            int header = data.getInt(position);
+            int frameLength = frameLength(header);
+            // After a sync loss, only trust a header that is followed by another frame (or the end)
+            if (frameLength <= 0 || position + frameLength > size
+                    || (!locked && position + frameLength + 4 <= size && frameLength(data.getInt(position + frameLength)) <= 0)) {
+                locked = false;
+                position++;
+                continue;
+            }
+            locked = true;
+
+            if (segmentStart < 0) {
+                segmentStart = position;
+            }
+            segmentMicros += samplesPerFrame(header) * 1_000_000.0 / sampleRate(header);
+            position += frameLength;
+            segmentEnd = position;
+
+            if (segmentMicros >= targetMicros) {
+                if (segments + 1 >= boundaries.length) {
+                    boundaries = Arrays.copyOf(boundaries, boundaries.length * 2);
+                    durations = Arrays.copyOf(durations, durations.length * 2);
+                }
+                boundaries[segments] = segmentStart;
+                durations[segments] = (int) Math.round(segmentMicros);
+                segments++;
+                segmentStart = -1;
+                segmentMicros = 0;
+            }
+        }
+
+        if (segmentStart >= 0) {
+            if (segments + 1 >= boundaries.length) {
+                boundaries = Arrays.copyOf(boundaries, boundaries.length + 1);
+                durations = Arrays.copyOf(durations, durations.length + 1);
+            }
+            boundaries[segments] = segmentStart;
+            durations[segments] = (int) Math.round(segmentMicros);
+            segments++;
+        }
+        // Garbage between frames stays inside a segment; the last segment ends after its last frame
+        boundaries[segments] = segments > 0 ? segmentEnd : 0;
+
+        return new SegmentIndex(size, lastModified, targetMicros,
+                Arrays.copyOf(boundaries, segments + 1), Arrays.copyOf(durations, segments));
+    }
+
+    /**
+     * Length in bytes of the frame starting with {@code header}, or -1 if it is not a valid header.
+     */
+    static int frameLength(int header) {
+        if ((header >>> 21) != 0x7FF) {
+            return -1;
+        }
+        int version = (header >>> 19) & 3;
+        int layer = 4 - ((header >>> 17) & 3);
+        int bitrateIndex = (header >>> 12) & 0xF;
+        int sampleRateIndex = (header >>> 10) & 3;
+        if (version == 1 || layer == 4 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return -1;
+        }
+        int bitrate = BITRATES[version == 3 ? 0 : 1][layer - 1][bitrateIndex] * 1000;
+        int sampleRate = sampleRate(header);
+        int padding = (header >>> 9) & 1;
+
+        if (layer == 1) {
+            return (12 * bitrate / sampleRate + padding) * 4;
+        }
+        int coefficient = layer == 3 && version != 3 ? 72 : 144;
+        return coefficient * bitrate / sampleRate + padding;
+    }
+
+    private static int sampleRate(int header) {
+        int version = (header >>> 19) & 3;
+        int rate = MPEG1_SAMPLE_RATES[(header >>> 10) & 3];
+        return version == 3 ? rate : version == 2 ? rate / 2 : rate / 4;
+    }
+
+    private static int samplesPerFrame(int header) {
+        int version = (header >>> 19) & 3;
+        int layer = 4 - ((header >>> 17) & 3);
+        if (layer == 1) {
+            return 384;
+        }
+        return layer == 3 && version != 3 ? 576 : 1152;
+    }
+
+    // ID3v2: "ID3", version, flags, then a 28-bit syncsafe size (plus 10 more for a footer)
+    private static int id3v2Length(MappedByteBuffer data, int size) {
+        if (size < 10 || data.get(0) != 'I' || data.get(1) != 'D' || data.get(2) != '3') {
+            return 0;
+        }
+        int tagSize = ((data.get(6) & 0x7F) << 21) | ((data.get(7) & 0x7F) << 14)
+                | ((data.get(8) & 0x7F) << 7) | (data.get(9) & 0x7F);
+        boolean footer = (data.get(5) & 0x10) != 0;
+        return Math.min(size, 10 + tagSize + (footer ? 10 : 0));
+    }
+}
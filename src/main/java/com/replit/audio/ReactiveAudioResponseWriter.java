@@ -0,0 +1,166 @@
+
+package com.replit.audio;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.ResourceRegionEncoder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the responses built by {@link AudioStreamingService} and {@link HlsService} on the
+ * reactive runtime, where the servlet message converters do not apply. File regions go to
+ * Reactor Netty's {@link ZeroCopyHttpOutputMessage} (a Netty {@code FileRegion}, i.e.
+ * sendfile, unless TLS or compression needs the bytes); hot-cache buffers are wrapped
+ * without a copy. The response's status and headers are taken as built, so no Range
+ * header is applied a second time.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAudioResponseWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ResourceRegionEncoder regionEncoder = new ResourceRegionEncoder(BUFFER_SIZE);
+    private final ObjectMapper objectMapper;
+
+    // Metrics
+    private final Counter zeroCopyBytesCounter;
+
+    public ReactiveAudioResponseWriter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.zeroCopyBytesCounter = Counter.builder("audio_zero_copy_bytes_total")
+                .description("Total number of audio bytes written from file regions")
+                .tag("mode", "netty")
+                .register(meterRegistry);
+    }
+
+    public Mono<Void> write(ResponseEntity<?> entity, ServerHttpResponse response) {
+        response.setStatusCode(entity.getStatusCode());
+        response.getHeaders().putAll(entity.getHeaders());
+
+        Object body = entity.getBody();
+        if (body == null) {
+            return response.setComplete();
+        }
+        if (body instanceof ZeroCopyFileRegion region) {
+            return writeFile(response, region.file(), region.position(), region.count());
+        }
+        if (body instanceof ResourceRegion region) {
+            // The servlet region converter adds these; here they are ours to set
+            long end = region.getPosition() + region.getCount() - 1;
+            try {
+                response.getHeaders().set(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + region.getPosition() + "-" + end + "/" + region.getResource().contentLength());
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+            response.getHeaders().setContentLength(region.getCount());
+            return writeResource(response, region.getResource(), region.getPosition(), region.getCount());
+        }
+        if (body instanceof List<?> regions) {
+            return writeMultipart(response, regions);
+        }
+        if (body instanceof InputStreamResource resource) {
+            return response.writeWith(DataBufferUtils.readInputStream(
+                            resource::getInputStream, response.bufferFactory(), BUFFER_SIZE)
+                    .subscribeOn(Schedulers.boundedElastic()));
+        }
+        if (body instanceof Resource resource) {
+            try {
+                return writeResource(response, resource, 0, resource.contentLength());
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+        }
+        if (body instanceof String text) {
+            return writeBytes(response, text.getBytes(StandardCharsets.UTF_8));
+        }
+        return writeJson(response, body);
+    }
+
+    private Mono<Void> writeResource(ServerHttpResponse response, Resource resource, long position, long count) {
+        if (resource instanceof ByteBufferResource cached) {
+            ByteBuffer bytes = cached.asByteBuffer()
+                    .position(Math.toIntExact(position))
+                    .limit(Math.toIntExact(position + count))
+                    .slice();
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+        }
+        try {
+            if (resource.isFile()) {
+                return writeFile(response, resource.getFile().toPath(), position, count);
+            }
+        } catch (IOException e) {
+            return Mono.error(e);
+        }
+        Flux<DataBuffer> buffers = DataBufferUtils.read(resource, position, response.bufferFactory(), BUFFER_SIZE);
+        return response.writeWith(DataBufferUtils.takeUntilByteCount(buffers, count));
+    }
+
+    private Mono<Void> writeFile(ServerHttpResponse response, Path file, long position, long count) {
+        ServerHttpResponse target = response;
+        while (target instanceof ServerHttpResponseDecorator decorator) {
+            target = decorator.getDelegate();
+        }
+        if (target instanceof ZeroCopyHttpOutputMessage zeroCopy) {
+            return zeroCopy.writeWith(file, position, count)
+                    .doOnSuccess(done -> zeroCopyBytesCounter.increment(count));
+        }
+        Flux<DataBuffer> buffers = DataBufferUtils.read(
+                new FileSystemResource(file), position, response.bufferFactory(), BUFFER_SIZE);
+        return response.writeWith(DataBufferUtils.takeUntilByteCount(buffers, count));
+    }
+
+    // Same multipart/byteranges body as the servlet region converter, one part per range
+    private Mono<Void> writeMultipart(ServerHttpResponse response, List<?> regions) {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        response.getHeaders().setContentType(MediaType.parseMediaType("multipart/byteranges;boundary=" + boundary));
+        Flux<ResourceRegion> parts = Flux.fromIterable(regions).cast(ResourceRegion.class);
+        return response.writeWith(regionEncoder.encode(parts, response.bufferFactory(),
+                ResolvableType.forClass(ResourceRegion.class), AudioStreamingService.AUDIO_MPEG,
+                Map.of(ResourceRegionEncoder.BOUNDARY_STRING_HINT, boundary)));
+    }
+
+    private Mono<Void> writeJson(ServerHttpResponse response, Object body) {
+        try {
+            if (response.getHeaders().getContentType() == null) {
+                response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            }
+            return writeBytes(response, objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+    }
+
+    private static Mono<Void> writeBytes(ServerHttpResponse response, byte[] bytes) {
+        response.getHeaders().setContentLength(bytes.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+    }
+}
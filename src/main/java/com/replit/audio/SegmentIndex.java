@@ -0,0 +1,155 @@
+
+package com.replit.audio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Frame-aligned segment boundaries of one MP3 file: segment {@code i} is the byte range
+ * {@code [boundary(i), boundary(i + 1))} and plays for {@code durationMicros(i)}. Persisted
+ * next to the file as {@code <name>.idx} together with the size, modification time and
+ * target duration it was computed for, so a changed file or setting is detected.
+ */
+public final class SegmentIndex {
+
+    private static final int MAGIC = 0x4D334958; // "M3IX"
+    private static final int VERSION = 1;
+    // Magic, version, size, modification time, target duration and segment count
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + 4;
+
+    private final long fileSize;
+    private final long lastModified;
+    private final long targetMicros;
+    private final long[] boundaries;
+    private final int[] durationsMicros;
+
+    SegmentIndex(long fileSize, long lastModified, long targetMicros, long[] boundaries, int[] durationsMicros) {
+        if (boundaries.length != durationsMicros.length + 1) {
+            throw new IllegalArgumentException("Expected one more boundary than segments");
+        }
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.targetMicros = targetMicros;
+        this.boundaries = boundaries;
+        this.durationsMicros = durationsMicros;
+    }
+
+    public int segmentCount() {
+        return durationsMicros.length;
+    }
+
+    public long offset(int segment) {
+        return boundaries[segment];
+    }
+
+    public long length(int segment) {
+        return boundaries[segment + 1] - boundaries[segment];
+    }
+
+    public long durationMicros(int segment) {
+        return durationsMicros[segment];
+    }
+
+    public long targetMicros() {
+        return targetMicros;
+    }
+
+    boolean matches(long size, long modified, long target) {
+        return fileSize == size && lastModified == modified && targetMicros == target;
+    }
+
+    public static Path pathFor(Path audioFile) {
+        return audioFile.resolveSibling(audioFile.getFileName() + ".idx");
+    }
+
+    /**
+     * Reads a persisted index; returns null if there is none, it does not describe the given
+     * file version and target duration, or its boundaries are not increasing offsets within
+     * the file (a damaged index is rescanned rather than served).
+     */
+    static SegmentIndex read(Path indexFile, long size, long modified, long target) throws IOException {
+        long indexSize;
+        try {
+            indexSize = Files.size(indexFile);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            long targetMicros = in.readLong();
+            if (fileSize != size || lastModified != modified || targetMicros != target) {
+                return null;
+            }
+            int count = in.readInt();
+            // The length must match the count before anything is allocated for it
+            if (count < 0 || count > fileSize || indexSize != HEADER_BYTES + 8L * (count + 1) + 4L * count) {
+                return null;
+            }
+            long[] boundaries = new long[count + 1];
+            for (int i = 0; i <= count; i++) {
+                boundaries[i] = in.readLong();
+                if (boundaries[i] < 0 || boundaries[i] > fileSize || (i > 0 && boundaries[i] <= boundaries[i - 1])) {
+                    return null;
+                }
+            }
+            int[] durations = new int[count];
+            for (int i = 0; i < count; i++) {
+                durations[i] = in.readInt();
+                if (durations[i] < 0) {
+                    return null;
+                }
+            }
+            return new SegmentIndex(fileSize, lastModified, targetMicros, boundaries, durations);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index through a temporary file and a rename, so readers never see a partial one.
+     * Every write gets its own temporary file, so concurrent writers of the same index (e.g. two
+     * replicas sharing a directory) never interleave; the last rename wins.
+     */
+    void write(Path indexFile) throws IOException {
+        Path temp = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName() + ".", ".tmp");
+        try {
+            writeTo(temp);
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeTo(Path temp) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeLong(targetMicros);
+            out.writeInt(durationsMicros.length);
+            for (long boundary : boundaries) {
+                out.writeLong(boundary);
+            }
+            for (int duration : durationsMicros) {
+                out.writeInt(duration);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+
+package com.replit.audio;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes {@link ZeroCopyFileRegion} bodies. When Tomcat offers sendfile for the current
+ * dispatch, the region is handed to the connector through the sendfile request attributes
+ * and the kernel copies it straight from the page cache to the socket; no body bytes pass
+ * through the JVM. Otherwise the region is copied into the servlet output stream.
+ *
+ * <p>Tomcat only performs sendfile at the end of the container's initial dispatch. Handlers
+ * returning an already completed future stay in it ({@code CompletedFutureReturnValueHandler});
+ * responses completed in an async dispatch, after a remote access check, are copied.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ZeroCopyFileHttpMessageConverter extends AbstractHttpMessageConverter<ZeroCopyFileRegion> {
+
+    static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    // Metrics
+    private final Counter sendfileBytesCounter;
+    private final Counter copiedBytesCounter;
+
+    public ZeroCopyFileHttpMessageConverter(MeterRegistry meterRegistry) {
+        super(MediaType.ALL);
+        this.sendfileBytesCounter = Counter.builder("audio_zero_copy_bytes_total")
+                .description("Total number of audio bytes written from file regions")
+                .tag("mode", "sendfile")
+                .register(meterRegistry);
+        this.copiedBytesCounter = Counter.builder("audio_copied_bytes_total")
+                .description("Total number of audio bytes from file regions copied through a user-space buffer")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ZeroCopyFileRegion.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ZeroCopyFileRegion readInternal(Class<? extends ZeroCopyFileRegion> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("ZeroCopyFileRegion is write-only", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(ZeroCopyFileRegion region, MediaType contentType) {
+        return region.count();
+    }
+
+    @Override
+    protected void writeInternal(ZeroCopyFileRegion region, HttpOutputMessage outputMessage) throws IOException {
+        if (region.count() == 0) {
+            return;
+        }
+
+        HttpServletRequest request = sendfileRequest();
+        if (request != null) {
+            // Content-Length is already set; the connector writes the body once the handler returns
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, region.file().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, region.position());
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, region.position() + region.count());
+            sendfileBytesCounter.increment(region.count());
+            return;
+        }
+
+        // The servlet stream is no socket channel: transferTo reads into a buffer and writes it out
+        WritableByteChannel target = Channels.newChannel(outputMessage.getBody());
+        try (FileChannel source = FileChannel.open(region.file(), StandardOpenOption.READ)) {
+            long position = region.position();
+            long remaining = region.count();
+            while (remaining > 0) {
+                long written = source.transferTo(position, remaining, target);
+                if (written <= 0) {
+                    throw new EOFException("File " + region.file() + " ended before position " + (position + remaining));
+                }
+                position += written;
+                remaining -= written;
+            }
+        }
+        copiedBytesCounter.increment(region.count());
+    }
+
+    private static HttpServletRequest sendfileRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        if (request.getDispatcherType() != DispatcherType.REQUEST || request.isAsyncStarted()) {
+            return null;
+        }
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE)) ? request : null;
+    }
+}
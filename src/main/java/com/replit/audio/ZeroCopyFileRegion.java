@@ -0,0 +1,18 @@
+
+package com.replit.audio;
+
+import java.nio.file.Path;
+
+/**
+ * A byte range of a file to be written without copying it through the heap; see
+ * {@link ZeroCopyFileHttpMessageConverter}. Spring's range handling does not apply to
+ * this type, so the producer sets Content-Range itself.
+ */
+public record ZeroCopyFileRegion(Path file, long position, long count) {
+
+    public ZeroCopyFileRegion {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Invalid file region: position=" + position + ", count=" + count);
+        }
+    }
+}
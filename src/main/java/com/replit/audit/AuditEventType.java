@@ -0,0 +1,10 @@
+
+package com.replit.audit;
+
+public enum AuditEventType {
+    ACCESS_GRANTED,
+    ACCESS_DENIED,
+    ACCESS_DENIED_CIRCUIT_BREAKER,
+    UNAUTHORIZED_ACCESS_ATTEMPT,
+    ACCESS_GRANT_REUSED
+}
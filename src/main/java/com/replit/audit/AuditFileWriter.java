@@ -0,0 +1,255 @@
+
+package com.replit.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only audit file with size-based rotation. Used only from the audit writer thread.
+ *
+ * <p>JSON_LINES writes one JSON object per line. BINARY writes length-prefixed records:
+ * int record length, long epoch millis, byte event type ordinal, then userId, resourceId,
+ * clientIp and reason as (short length, UTF-8 bytes), with length -1 for null.
+ *
+ * <p>A rotation that fails (the rename is refused, the directory is full) never leaves the
+ * writer without a file: the active file is reopened and keeps growing past the size limit
+ * until a retry, at most once a minute, succeeds.
+ */
+class AuditFileWriter implements AutoCloseable {
+
+    enum Format {
+        JSON_LINES("jsonl"),
+        BINARY("bin");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditFileWriter.class);
+    private static final Duration ROTATION_RETRY = Duration.ofMinutes(1);
+    private static final DateTimeFormatter ROTATION_SUFFIX =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final Format format;
+    private final long maxFileBytes;
+    private final int maxRotatedFiles;
+    private final boolean fsync;
+    private final Path activeFile;
+    private final Clock clock;
+
+    private final StringBuilder json = new StringBuilder(4096);
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private FileChannel channel;
+    private Instant nextRotationAttempt = Instant.MIN;
+
+    AuditFileWriter(Path directory, Format format, long maxFileBytes, int maxRotatedFiles, boolean fsync)
+            throws IOException {
+        this(directory, format, maxFileBytes, maxRotatedFiles, fsync, Clock.systemUTC());
+    }
+
+    AuditFileWriter(Path directory, Format format, long maxFileBytes, int maxRotatedFiles, boolean fsync,
+                    Clock clock) throws IOException {
+        this.clock = clock;
+        this.directory = directory;
+        this.format = format;
+        this.maxFileBytes = maxFileBytes;
+        this.maxRotatedFiles = maxRotatedFiles;
+        this.fsync = fsync;
+        this.activeFile = directory.resolve("audit." + format.extension);
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Encodes {@code count} events starting at the buffer's head and appends them in one write.
+     */
+    void write(AuditRingBuffer ring, int count) throws IOException {
+        buffer.clear();
+        for (int i = 0; i < count; i++) {
+            AuditRingBuffer.Slot slot = ring.peek(i);
+            if (format == Format.JSON_LINES) {
+                encodeJson(slot);
+            } else {
+                encodeBinary(slot);
+            }
+        }
+        buffer.flip();
+
+        // A failed reopen after rotation is retried with every batch
+        if (!channel.isOpen()) {
+            open();
+        }
+        if (channel.size() + buffer.remaining() > maxFileBytes && channel.size() > 0
+                && !clock.instant().isBefore(nextRotationAttempt)) {
+            rotate();
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private void encodeJson(AuditRingBuffer.Slot slot) {
+        json.setLength(0);
+        json.append("{\"ts\":\"").append(Instant.ofEpochMilli(slot.getTimestampMillis())).append('"');
+        json.append(",\"event\":\"").append(slot.getType()).append('"');
+        appendJsonField("user", slot.getUserId());
+        appendJsonField("resource", slot.getResourceId());
+        appendJsonField("ip", slot.getClientIp());
+        appendJsonField("reason", slot.getReason());
+        json.append("}\n");
+        put(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void appendJsonField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        json.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    private void encodeBinary(AuditRingBuffer.Slot slot) {
+        byte[] user = utf8(slot.getUserId());
+        byte[] resource = utf8(slot.getResourceId());
+        byte[] ip = utf8(slot.getClientIp());
+        byte[] reason = utf8(slot.getReason());
+        int length = Long.BYTES + 1 + fieldLength(user) + fieldLength(resource) + fieldLength(ip) + fieldLength(reason);
+
+        ensureCapacity(Integer.BYTES + length);
+        buffer.putInt(length);
+        buffer.putLong(slot.getTimestampMillis());
+        buffer.put((byte) slot.getType().ordinal());
+        putField(user);
+        putField(resource);
+        putField(ip);
+        putField(reason);
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // Field lengths are shorts; audit fields are identifiers, so truncation is not expected
+        return bytes.length > Short.MAX_VALUE ? Arrays.copyOf(bytes, Short.MAX_VALUE) : bytes;
+    }
+
+    private static int fieldLength(byte[] bytes) {
+        return Short.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private void putField(byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() < extra) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(activeFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Whatever fails, the channel is open again afterwards (on the rotated-to or the old file)
+    private void rotate() throws IOException {
+        Instant now = clock.instant();
+        Path rotated = directory.resolve("audit-" + ROTATION_SUFFIX.format(now) + "." + format.extension);
+        try {
+            channel.force(true);
+            channel.close();
+            Files.move(activeFile, rotated, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            nextRotationAttempt = now.plus(ROTATION_RETRY);
+            logger.warn("Cannot rotate audit file {} to {}, appending to it until {}: {}",
+                    activeFile, rotated, nextRotationAttempt, e.toString());
+        } finally {
+            if (!channel.isOpen()) {
+                open();
+            }
+        }
+        try {
+            deleteOldRotatedFiles();
+        } catch (IOException e) {
+            logger.warn("Cannot delete old rotated audit files in {}: {}", directory, e.toString());
+        }
+    }
+
+    private void deleteOldRotatedFiles() throws IOException {
+        List<Path> rotated = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith("audit-") && name.endsWith("." + format.extension);
+            }).sorted().forEach(rotated::add);
+        }
+        for (int i = 0; i < rotated.size() - maxRotatedFiles; i++) {
+            Files.deleteIfExists(rotated.get(i));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+
+package com.replit.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Audit trail for access decisions. Events are copied into a preallocated ring buffer on
+ * the request thread and written to a rotating append-only file in batches by a
+ * background writer, so audit I/O is no longer in series with request handling.
+ * With audit.pipeline.enabled=false events go synchronously to the AUDIT logger instead.
+ */
+@Component
+public class AuditLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+    private static final Logger auditLogger = LoggerFactory.getLogger("AUDIT");
+
+    @Value("${audit.pipeline.enabled:true}")
+    private boolean pipelineEnabled;
+
+    @Value("${audit.directory:audit-logs}")
+    private String directory;
+
+    @Value("${audit.format:JSON_LINES}")
+    private AuditFileWriter.Format format;
+
+    @Value("${audit.buffer-capacity:65536}")
+    private int bufferCapacity;
+
+    @Value("${audit.overflow-policy:DROP}")
+    private AuditRingBuffer.OverflowPolicy overflowPolicy;
+
+    @Value("${audit.batch-size:1024}")
+    private int batchSize;
+
+    @Value("${audit.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${audit.file.max-bytes:104857600}")
+    private long maxFileBytes;
+
+    @Value("${audit.file.max-rotated:20}")
+    private int maxRotatedFiles;
+
+    @Value("${audit.file.fsync:false}")
+    private boolean fsync;
+
+    private final MeterRegistry meterRegistry;
+    private AuditRingBuffer ringBuffer;
+    private AuditFileWriter fileWriter;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    // Metrics
+    private final Counter publishedCounter;
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter writeFailureCounter;
+    private final Timer batchWriteTimer;
+
+    public AuditLog(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.publishedCounter = Counter.builder("audit_events_published_total")
+                .description("Total number of audit events accepted by the audit pipeline")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("audit_events_written_total")
+                .description("Total number of audit events written to the audit file")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("audit_events_dropped_total")
+                .description("Total number of audit events dropped because the buffer was full")
+                .register(meterRegistry);
+        this.writeFailureCounter = Counter.builder("audit_write_failures_total")
+                .description("Total number of audit batches that could not be written")
+                .register(meterRegistry);
+        this.batchWriteTimer = Timer.builder("audit_batch_write_duration")
+                .description("Time spent encoding and writing one audit batch")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!pipelineEnabled) {
+            logger.info("Audit pipeline disabled, writing audit events to the AUDIT logger");
+            return;
+        }
+        ringBuffer = new AuditRingBuffer(bufferCapacity, overflowPolicy);
+        fileWriter = new AuditFileWriter(Paths.get(directory), format, maxFileBytes, maxRotatedFiles, fsync);
+
+        Gauge.builder("audit_queue_depth", ringBuffer, AuditRingBuffer::size)
+                .description("Number of audit events waiting to be written")
+                .register(meterRegistry);
+        Gauge.builder("audit_write_lag_ms", ringBuffer, buffer -> {
+                    long oldest = buffer.oldestTimestampMillis();
+                    return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+                })
+                .description("Age of the oldest audit event not yet written")
+                .register(meterRegistry);
+
+        running = true;
+        writerThread = new Thread(this::drainLoop, "AuditWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Audit pipeline started: dir={}, format={}, capacity={}, overflow={}",
+                directory, format, ringBuffer.capacity(), overflowPolicy);
+    }
+
+    public void accessGranted(String userId, String resourceId, String clientIp) {
+        publish(AuditEventType.ACCESS_GRANTED, userId, resourceId, clientIp, null);
+    }
+
+    public void accessGrantReused(String userId, String resourceId, String clientIp) {
+        publish(AuditEventType.ACCESS_GRANT_REUSED, userId, resourceId, clientIp, null);
+    }
+
+    public void accessDenied(String userId, String resourceId, String clientIp) {
+        publish(AuditEventType.ACCESS_DENIED, userId, resourceId, clientIp, null);
+    }
+
+    public void accessDeniedUnavailable(String userId, String resourceId, String clientIp, String reason) {
+        publish(AuditEventType.ACCESS_DENIED_CIRCUIT_BREAKER, userId, resourceId, clientIp, reason);
+    }
+
+    public void unauthorizedAccess(String resourceId, String clientIp, String reason) {
+        publish(AuditEventType.UNAUTHORIZED_ACCESS_ATTEMPT, null, resourceId, clientIp, reason);
+    }
+
+    private void publish(AuditEventType type, String userId, String resourceId, String clientIp, String reason) {
+        long now = System.currentTimeMillis();
+        if (ringBuffer == null) {
+            auditLogger.warn("{}: user={}, resource={}, ip={}, reason={}, timestamp={}",
+                    type, userId, resourceId, clientIp, reason, now);
+            return;
+        }
+        if (ringBuffer.publish(now, type, userId, resourceId, clientIp, reason)) {
+            publishedCounter.increment();
+        } else {
+            droppedCounter.increment();
+        }
+    }
+
+    private void drainLoop() {
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (running || ringBuffer.size() > 0) {
+            try {
+                int count = ringBuffer.awaitBatch(batchSize, flushIntervalNanos);
+                if (count == 0) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    fileWriter.write(ringBuffer, count);
+                    writtenCounter.increment(count);
+                } catch (IOException e) {
+                    // Events are released anyway so a broken disk cannot block request threads
+                    writeFailureCounter.increment();
+                    logger.error("Failed to write {} audit events: {}", count, e.getMessage());
+                }
+                ringBuffer.release(count);
+                batchWriteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        try {
+            fileWriter.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close audit file: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+
+package com.replit.audit;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded multi-producer, single-consumer queue of audit events backed by preallocated
+ * slots. Publishing copies the event fields into the next free slot, so producers do not
+ * allocate. The consumer reads a batch in place and releases it once written.
+ */
+public class AuditRingBuffer {
+
+    public enum OverflowPolicy {
+        /** Drop the event and count it when the buffer is full. */
+        DROP,
+        /** Block the producer until the writer frees a slot. */
+        BLOCK
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Guarded by lock; head is the oldest unreleased event, tail the next free slot
+    private long head;
+    private long tail;
+
+    public AuditRingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Returns false if the event was dropped because the buffer is full (or the
+     * producer was interrupted while waiting under the BLOCK policy).
+     */
+    public boolean publish(long timestampMillis, AuditEventType type, String userId,
+                           String resourceId, String clientIp, String reason) {
+        lock.lock();
+        try {
+            while (tail - head == slots.length) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    return false;
+                }
+                try {
+                    notFull.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            slots[(int) (tail & mask)].set(timestampMillis, type, userId, resourceId, clientIp, reason);
+            tail++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to {@code timeoutNanos} for events and returns how many (at most
+     * {@code maxBatch}) can be read with {@link #peek(int)} before {@link #release(int)}.
+     */
+    public int awaitBatch(int maxBatch, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (tail == head && remaining > 0) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return (int) Math.min(maxBatch, tail - head);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Slot {@code offset} events after the oldest unreleased one. Only valid for the
+     * consumer, for offsets below the last {@link #awaitBatch} result.
+     */
+    public Slot peek(int offset) {
+        return slots[(int) ((head + offset) & mask)];
+    }
+
+    public void release(int count) {
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                slots[(int) ((head + i) & mask)].clear();
+            }
+            head += count;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return (int) (tail - head);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Timestamp of the oldest event not yet written, or 0 when empty.
+     */
+    public long oldestTimestampMillis() {
+        lock.lock();
+        try {
+            return tail == head ? 0 : slots[(int) (head & mask)].timestampMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public static final class Slot {
+        private long timestampMillis;
+        private AuditEventType type;
+        private String userId;
+        private String resourceId;
+        private String clientIp;
+        private String reason;
+
+        void set(long timestampMillis, AuditEventType type, String userId,
+                 String resourceId, String clientIp, String reason) {
+            this.timestampMillis = timestampMillis;
+            this.type = type;
+            this.userId = userId;
+            this.resourceId = resourceId;
+            this.clientIp = clientIp;
+            this.reason = reason;
+        }
+
+        void clear() {
+            set(0, null, null, null, null, null);
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public AuditEventType getType() {
+            return type;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getResourceId() {
+            return resourceId;
+        }
+
+        public String getClientIp() {
+            return clientIp;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package com.replit.config;
 
+import com.replit.ratelimit.InMemorySharedCounterStore;
+import com.replit.ratelimit.LocalRateLimitBackend;
+import com.replit.ratelimit.RateLimitBackend;
+import com.replit.ratelimit.RateLimitProperties;
+import com.replit.ratelimit.SharedCounterStore;
+import com.replit.ratelimit.SharedRateLimitBackend;
 import io.github.resilience4j.ratelimiter.RateLimiter;
 import io.github.resilience4j.ratelimiter.RateLimiterConfig;
-import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-import org.springframework.web.client.RestTemplate;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
 import java.util.concurrent.Executor;
@@ -16,16 +28,52 @@ import java.util.concurrent.Executor;
 @EnableAsync
 public class AppConfig {
 
-    @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder builder) {
-        return builder
-                .setConnectTimeout(Duration.ofMillis(5000))
-                .setReadTimeout(Duration.ofMillis(5000))
+    private static final Logger logger = LoggerFactory.getLogger(AppConfig.class);
+
+    /**
+     * Connection pool for main-app traffic. Reactor Netty pools per remote host, so
+     * the limits below are per-route limits for the main app. With metrics enabled the
+     * pool publishes reactor.netty.connection.provider.* gauges (total, active, idle,
+     * pending) to the global Micrometer registry.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider mainAppConnectionProvider(
+            @Value("${main-app.pool.max-connections:200}") int maxConnections,
+            @Value("${main-app.pool.max-pending:1000}") int maxPending,
+            @Value("${main-app.pool.pending-acquire-timeout:PT1S}") Duration pendingAcquireTimeout,
+            @Value("${main-app.pool.max-idle-time:PT30S}") Duration maxIdleTime,
+            @Value("${main-app.pool.max-life-time:PT5M}") Duration maxLifeTime,
+            @Value("${main-app.pool.evict-interval:PT15S}") Duration evictInterval) {
+        return ConnectionProvider.builder("main-app")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(maxPending)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInterval)
+                .lifo()
+                .metrics(true)
                 .build();
     }
 
+    /**
+     * Executor for @Async work and response composition. With
+     * spring.threads.virtual.enabled on Java 21+ every task gets its own virtual thread
+     * (Spring Boot switches Tomcat's request threads at the same time); otherwise a
+     * bounded platform-thread pool is used.
+     */
     @Bean
-    public Executor asyncExecutor() {
+    public Executor asyncExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            if (Runtime.version().feature() >= 21) {
+                SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("AudioService-vt-");
+                executor.setVirtualThreads(true);
+                return executor;
+            }
+            logger.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads - using platform pool",
+                    Runtime.version().feature());
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(5);
         executor.setMaxPoolSize(20);
@@ -46,12 +94,35 @@ public class AppConfig {
     }
 
     @Bean
-    public RateLimiter audioAccessRateLimiter() {
-        RateLimiterConfig config = RateLimiterConfig.custom()
-                .limitForPeriod(5)
-                .limitRefreshPeriod(Duration.ofSeconds(1))
-                .timeoutDuration(Duration.ofMillis(100))
-                .build();
-        return RateLimiter.of("audio-access", config);
+    @ConditionalOnProperty(name = "rate-limit.backend", havingValue = "local", matchIfMissing = true)
+    public RateLimitBackend localRateLimitBackend(RateLimitProperties properties) {
+        return new LocalRateLimitBackend(properties);
+    }
+
+    /**
+     * Cluster-wide limits. Replicas lease tokens from the shared store in chunks of
+     * rate-limit.shared.chunk-size, so no request waits on the store.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "rate-limit.backend", havingValue = "shared")
+    public RateLimitBackend sharedRateLimitBackend(
+            SharedCounterStore sharedCounterStore,
+            RateLimitProperties properties,
+            @Value("${rate-limit.shared.chunk-size:5}") int chunkSize,
+            @Value("${rate-limit.shared.initial-credit:1}") long initialCredit,
+            MeterRegistry meterRegistry) {
+        return new SharedRateLimitBackend(sharedCounterStore, properties, chunkSize, initialCredit, meterRegistry);
+    }
+
+    /**
+     * In-process stand-in used when no real shared store bean (e.g. Redis-backed) is defined.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "rate-limit.backend", havingValue = "shared")
+    @ConditionalOnMissingBean(SharedCounterStore.class)
+    public SharedCounterStore inMemorySharedCounterStore(RateLimitProperties properties) {
+        logger.warn("rate-limit.backend=shared without a SharedCounterStore bean - using the in-memory store, "
+                + "limits are not shared between replicas");
+        return new InMemorySharedCounterStore(properties.getIdleTimeout());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+
+package com.replit.config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handles a {@link CompletableFuture} that is already completed when the controller returns
+ * it as if its value had been returned directly, instead of through an async dispatch.
+ * The response then completes in the container's initial dispatch, the only one in which
+ * Tomcat performs sendfile. Pending and failed futures keep Spring's async handling.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CompletedFutureReturnValueHandler implements HandlerMethodReturnValueHandler, SmartInitializingSingleton {
+
+    private final RequestMappingHandlerAdapter handlerAdapter;
+    private final HandlerMethodReturnValueHandlerComposite delegates = new HandlerMethodReturnValueHandlerComposite();
+
+    public CompletedFutureReturnValueHandler(RequestMappingHandlerAdapter handlerAdapter) {
+        this.handlerAdapter = handlerAdapter;
+    }
+
+    // Custom handlers registered through WebMvcConfigurer run after the built-in ones, so
+    // this one is put in front of the adapter's list instead
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<HandlerMethodReturnValueHandler> handlers = handlerAdapter.getReturnValueHandlers();
+        if (handlers == null) {
+            return;
+        }
+        delegates.addHandlers(handlers);
+        List<HandlerMethodReturnValueHandler> withCompleted = new ArrayList<>(handlers.size() + 1);
+        withCompleted.add(this);
+        withCompleted.addAll(handlers);
+        handlerAdapter.setReturnValueHandlers(withCompleted);
+    }
+
+    @Override
+    public boolean supportsReturnType(MethodParameter returnType) {
+        return CompletableFuture.class.isAssignableFrom(returnType.getParameterType());
+    }
+
+    @Override
+    public void handleReturnValue(Object returnValue, MethodParameter returnType,
+                                  ModelAndViewContainer mavContainer, NativeWebRequest webRequest) throws Exception {
+        if (returnValue instanceof CompletableFuture<?> future
+                && future.isDone() && !future.isCompletedExceptionally()) {
+            Object result = future.join();
+            delegates.handleReturnValue(result, new CompletedResultParameter(returnType, result), mavContainer, webRequest);
+            return;
+        }
+        delegates.handleReturnValue(returnValue, returnType, mavContainer, webRequest);
+    }
+
+    /**
+     * The future's value type as the return type, the way Spring describes the result of
+     * an async dispatch.
+     */
+    private static final class CompletedResultParameter extends MethodParameter {
+
+        private final Class<?> resultClass;
+        private final Type resultType;
+
+        CompletedResultParameter(MethodParameter futureType, Object result) {
+            super(futureType);
+            ResolvableType valueType = ResolvableType.forMethodParameter(futureType).getGeneric();
+            this.resultClass = result != null ? result.getClass() : valueType.toClass();
+            this.resultType = valueType.getType();
+        }
+
+        private CompletedResultParameter(CompletedResultParameter original) {
+            super(original);
+            this.resultClass = original.resultClass;
+            this.resultType = original.resultType;
+        }
+
+        @Override
+        public Class<?> getParameterType() {
+            return resultClass;
+        }
+
+        @Override
+        public Type getGenericParameterType() {
+            return resultType;
+        }
+
+        @Override
+        public CompletedResultParameter clone() {
+            return new CompletedResultParameter(this);
+        }
+    }
+}
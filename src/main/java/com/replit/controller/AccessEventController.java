@@ -0,0 +1,90 @@
+
+package com.replit.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.replit.dto.AccessEventBatch;
+import com.replit.service.AccessEventService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inbound channel for grant/revoke events pushed by the main application.
+ * Requests are authenticated with an HMAC-SHA256 signature of the raw body
+ * ({@code X-Signature: sha256=<hex>}) using {@code main-app.events.secret}; the cursor
+ * read signs an {@code X-Timestamp} instead (see {@link AccessEventService#isCursorRequestValid}).
+ * After a reconnect the main app reads the cursor and replays everything after it.
+ */
+@RestController
+@RequestMapping("/api/internal/access-events")
+public class AccessEventController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessEventController.class);
+
+    private final AccessEventService accessEventService;
+    private final ObjectMapper objectMapper;
+
+    public AccessEventController(AccessEventService accessEventService, ObjectMapper objectMapper) {
+        this.accessEventService = accessEventService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> pushEvents(
+            @RequestBody byte[] body,
+            @RequestHeader(value = "X-Signature", required = false) String signature) {
+        if (!accessEventService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (!accessEventService.isSignatureValid(body, signature)) {
+            logger.warn("Rejected access event push with invalid signature");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        AccessEventBatch batch;
+        try {
+            batch = objectMapper.readValue(body, AccessEventBatch.class);
+        } catch (IOException e) {
+            return invalidBatch();
+        }
+        if (batch == null || batch.getEvents() == null || batch.getEvents().contains(null)) {
+            return invalidBatch();
+        }
+
+        AccessEventService.ApplyResult result = accessEventService.apply(batch.getEvents());
+        Map<String, Object> response = new HashMap<>();
+        response.put("applied", result.applied());
+        response.put("duplicates", result.duplicates());
+        response.put("gap_detected", result.gapDetected());
+        response.put("last_sequence", result.lastSequence());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/cursor")
+    public ResponseEntity<Map<String, Object>> cursor(
+            @RequestHeader(value = "X-Timestamp", required = false) String timestamp,
+            @RequestHeader(value = "X-Signature", required = false) String signature) {
+        if (!accessEventService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (!accessEventService.isCursorRequestValid(timestamp, signature)) {
+            logger.warn("Rejected access event cursor read with a stale timestamp or invalid signature");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("last_sequence", accessEventService.getLastSequence());
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<Map<String, Object>> invalidBatch() {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", "Invalid event batch");
+        return ResponseEntity.badRequest().body(error);
+    }
+}
@@ -1,6 +1,7 @@
 
 package com.replit.controller;
 
+import com.replit.audio.HotFileCache;
 import com.replit.service.AccessService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -14,9 +15,11 @@ import java.util.Map;
 public class AdminController {
 
     private final AccessService accessService;
+    private final HotFileCache hotFileCache;
 
-    public AdminController(AccessService accessService) {
+    public AdminController(AccessService accessService, HotFileCache hotFileCache) {
         this.accessService = accessService;
+        this.hotFileCache = hotFileCache;
     }
 
     @GetMapping("/health-check")
@@ -26,6 +29,8 @@ public class AdminController {
         health.put("service", "audio-resource-provider");
         health.put("authenticated_user", authentication.getName());
         health.put("access_service_failures", accessService.getFailureCount());
+        health.put("circuit_breaker_state", accessService.getCircuitBreakerState());
+        health.put("cached_access_decisions", accessService.getCachedDecisionCount());
         return ResponseEntity.ok(health);
     }
 
@@ -37,4 +42,38 @@ public class AdminController {
         response.put("status", "success");
         return ResponseEntity.ok(response);
     }
+
+    @DeleteMapping("/access-cache")
+    public ResponseEntity<Map<String, String>> invalidateAccessCache(
+            @RequestParam(required = false) String userId,
+            @RequestParam(required = false) String resourceId,
+            Authentication authentication) {
+        String scope;
+        if (userId != null && resourceId != null) {
+            accessService.invalidateCachedDecision(userId, resourceId);
+            scope = "user=" + userId + ", resource=" + resourceId;
+        } else if (userId != null) {
+            accessService.invalidateCachedDecisionsForUser(userId);
+            scope = "user=" + userId;
+        } else if (resourceId != null) {
+            accessService.invalidateCachedDecisionsForResource(resourceId);
+            scope = "resource=" + resourceId;
+        } else {
+            accessService.invalidateAllCachedDecisions();
+            scope = "all";
+        }
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Access cache invalidated (" + scope + ") by " + authentication.getName());
+        response.put("status", "success");
+        return ResponseEntity.ok(response);
+    }
+
+    @DeleteMapping("/hot-file-cache")
+    public ResponseEntity<Map<String, String>> invalidateHotFileCache(Authentication authentication) {
+        hotFileCache.invalidateAll();
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Hot-file cache cleared by " + authentication.getName());
+        response.put("status", "success");
+        return ResponseEntity.ok(response);
+    }
 }
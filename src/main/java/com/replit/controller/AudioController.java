@@ -1,142 +1,189 @@
 
 package com.replit.controller;
 
+import com.replit.audio.AudioStreamingService;
+import com.replit.audio.HlsService;
+import com.replit.security.ClientAddressFilter;
+import com.replit.security.StreamUrlSigner;
 import com.replit.service.AccessService;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
+import com.replit.service.AudioAccessGate;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.File;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api")
 @CrossOrigin(origins = {"https://*.replit.com", "https://*.repl.co"})
 public class AudioController {
 
     private static final Logger logger = LoggerFactory.getLogger(AudioController.class);
+    private static final List<String> STREAM_REQUEST_HEADERS = List.of(
+            HttpHeaders.RANGE, HttpHeaders.IF_RANGE, HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE);
     private final AccessService accessService;
-
-    public AudioController(AccessService accessService) {
+    private final Executor responseExecutor;
+    private final AudioAccessGate accessGate;
+    private final AudioStreamingService streamingService;
+    private final HlsService hlsService;
+    private final StreamUrlSigner streamUrlSigner;
+
+    @Value("${audio.stream.default-disposition:attachment}")
+    private String defaultDisposition;
+
+    public AudioController(AccessService accessService, @Qualifier("asyncExecutor") Executor responseExecutor,
+                           AudioAccessGate accessGate, AudioStreamingService streamingService,
+                           HlsService hlsService, StreamUrlSigner streamUrlSigner) {
         this.accessService = accessService;
+        this.responseExecutor = responseExecutor;
+        this.accessGate = accessGate;
+        this.streamingService = streamingService;
+        this.hlsService = hlsService;
+        this.streamUrlSigner = streamUrlSigner;
     }
 
     @GetMapping("/audio/stream/{resourceId}")
-    @RateLimiter(name = "audio-access", fallbackMethod = "rateLimitFallback")
-    public ResponseEntity<Resource> streamAudioFile(
+    public CompletableFuture<ResponseEntity<?>> streamAudioFile(
             @PathVariable String resourceId,
+            @RequestParam(name = "disposition", required = false) String disposition,
             Authentication authentication,
             HttpServletRequest request) {
         
-        String userId = authentication.getName();
-        String clientIp = getClientIpAddress(request);
+        HttpHeaders streamHeaders = requestHeaders(request);
+        boolean inline = "inline".equalsIgnoreCase(disposition != null ? disposition : defaultDisposition);
 
-        logger.debug("Audio stream request: user={}, resource={}, ip={}", userId, resourceId, clientIp);
+        // A player seeking through a stream sends many Range requests in a row; those reuse
+        // the grant that started the stream instead of being checked again
+        return withAccess(resourceId, authentication, request, streamHeaders.containsKey(HttpHeaders.RANGE),
+                () -> streamingService.buildResponse(resourceId, streamHeaders, inline));
+    }
 
-        try {
-            // Validate resource ID format
-            if (!isValidResourceId(resourceId)) {
-                accessService.logUnauthorizedAccess(resourceId, clientIp, "invalid_resource_format");
-                return ResponseEntity.badRequest().build();
-            }
+    @GetMapping("/audio/hls/{resourceId}/playlist.m3u8")
+    public CompletableFuture<ResponseEntity<?>> hlsPlaylist(
+            @PathVariable String resourceId,
+            Authentication authentication,
+            HttpServletRequest request) {
 
-            // Check access permissions
-            boolean hasAccess = accessService.checkAccess(userId, resourceId, clientIp);
-            if (!hasAccess) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                        .body(null);
-            }
+        HttpHeaders streamHeaders = requestHeaders(request);
+        return withAccess(resourceId, authentication, request, false,
+                () -> hlsService.playlist(resourceId, streamHeaders));
+    }
 
-            // Security: Prevent directory traversal
-            String sanitizedResourceId = resourceId.replaceAll("[^a-zA-Z0-9_-]", "");
-            Path audioFilePath = Paths.get("audio-files", sanitizedResourceId + ".mp3");
-            File audioFile = audioFilePath.toFile();
+    // Segments continue a stream whose playlist was just granted, like Range requests
+    @GetMapping("/audio/hls/{resourceId}/segments/{segment:\\d+}.mp3")
+    public CompletableFuture<ResponseEntity<?>> hlsSegment(
+            @PathVariable String resourceId,
+            @PathVariable int segment,
+            Authentication authentication,
+            HttpServletRequest request) {
 
-            if (!audioFile.exists() || !audioFile.isFile()) {
-                logger.warn("Audio file not found: {}", audioFilePath);
-                return ResponseEntity.notFound().build();
-            }
+        HttpHeaders streamHeaders = requestHeaders(request);
+        return withAccess(resourceId, authentication, request, true,
+                () -> hlsService.segment(resourceId, segment, streamHeaders));
+    }
 
-            // Prepare file for streaming
-            Resource fileResource = new FileSystemResource(audioFile);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", sanitizedResourceId + ".mp3");
-            headers.add("X-Content-Type-Options", "nosniff");
-            headers.add("X-Frame-Options", "DENY");
-
-            logger.info("Streaming audio file: {} for user: {}", sanitizedResourceId, userId);
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(fileResource);
-
-        } catch (Exception e) {
-            logger.error("Error streaming audio file {} for user {}: {}", resourceId, userId, e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    /**
+     * Issues a short-lived signed URL after one full access check; the signed paths then
+     * stream the resource without JWT, rate limiting or further access checks.
+     */
+    @PostMapping("/audio/signed-url/{resourceId}")
+    public CompletableFuture<ResponseEntity<?>> issueSignedUrl(
+            @PathVariable String resourceId,
+            Authentication authentication,
+            HttpServletRequest request) {
+
+        if (!streamUrlSigner.isEnabled()) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
         }
+        String clientIp = ClientAddressFilter.clientAddress(request);
+        return withAccess(resourceId, authentication, request, false, () -> {
+            StreamUrlSigner.SignedToken signed = streamUrlSigner.issue(authentication.getName(), resourceId, clientIp);
+            String base = "/api/audio/signed/" + signed.token() + "/" + resourceId;
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("stream_url", base + "/stream");
+            response.put("playlist_url", base + "/hls/playlist.m3u8");
+            response.put("expires_at", signed.expiresAt().getEpochSecond());
+            return CompletableFuture.completedFuture(ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(response));
+        });
     }
 
-    public ResponseEntity<Map<String, String>> rateLimitFallback(
-            String resourceId, 
-            Authentication authentication, 
-            HttpServletRequest request, 
-            Exception ex) {
-        
-        String clientIp = getClientIpAddress(request);
-        accessService.logUnauthorizedAccess(resourceId, clientIp, "rate_limit_exceeded");
-        
-        Map<String, String> error = new HashMap<>();
-        error.put("error", "Rate limit exceeded");
-        error.put("message", "Too many requests. Please try again later.");
-        error.put("retry_after", "60");
-        
-        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
+    /**
+     * Runs the shared access pipeline and builds the response with {@code granted} only once
+     * access is confirmed.
+     */
+    private CompletableFuture<ResponseEntity<?>> withAccess(String resourceId, Authentication authentication,
+                                                            HttpServletRequest request, boolean continuesStream,
+                                                            Supplier<CompletableFuture<ResponseEntity<?>>> granted) {
+        String userId = authentication.getName();
+        String clientIp = ClientAddressFilter.clientAddress(request);
+
+        logger.debug("Audio request: user={}, resource={}, ip={}, uri={}",
+                userId, resourceId, clientIp, request.getRequestURI());
+
+        AudioAccessGate.Admission admission = accessGate.admit(resourceId, authentication, clientIp, continuesStream);
+        switch (admission.decision()) {
+            case REJECTED:
+                return CompletableFuture.completedFuture(admission.rejection());
+            case RECENT_GRANT:
+                return respondNow(resourceId, userId, true, granted);
+            case LOCAL:
+                return respondNow(resourceId, userId, admission.hasAccess(), granted);
+            default:
+                break;
+        }
+
+        CompletableFuture<Boolean> check = accessService.checkAccessAsync(userId, resourceId, clientIp);
+        if (check.isDone()) {
+            // Cached decisions are already known: no executor hop for the response
+            return respondNow(resourceId, userId, check.join(), granted);
+        }
+
+        // Check access permissions without holding the servlet thread; the response
+        // is started on the async executor rather than on the HTTP client's event loop
+        return check
+                .<ResponseEntity<?>>thenComposeAsync(
+                        hasAccess -> accessGate.respond(resourceId, userId, hasAccess, granted), responseExecutor)
+                .exceptionally(e -> accessGate.failed(resourceId, userId, e));
     }
 
-    private boolean isValidResourceId(String resourceId) {
-        return resourceId != null && 
-               resourceId.matches("^[a-zA-Z0-9_-]{1,50}$") && 
-               !resourceId.contains("..");
+    // Starts the response on the request thread, failing the same way as the async path
+    private CompletableFuture<ResponseEntity<?>> respondNow(String resourceId, String userId, boolean hasAccess,
+                                                            Supplier<CompletableFuture<ResponseEntity<?>>> granted) {
+        try {
+            return accessGate.respond(resourceId, userId, hasAccess, granted)
+                    .exceptionally(e -> accessGate.failed(resourceId, userId, e));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(accessGate.failed(resourceId, userId, e));
+        }
     }
 
-    private String getClientIpAddress(HttpServletRequest request) {
-        String[] headerNames = {
-            "X-Forwarded-For",
-            "X-Real-IP",
-            "Proxy-Client-IP",
-            "WL-Proxy-Client-IP",
-            "HTTP_X_FORWARDED_FOR",
-            "HTTP_X_FORWARDED",
-            "HTTP_X_CLUSTER_CLIENT_IP",
-            "HTTP_CLIENT_IP",
-            "HTTP_FORWARDED_FOR",
-            "HTTP_FORWARDED",
-            "HTTP_VIA",
-            "REMOTE_ADDR"
-        };
-
-        for (String header : headerNames) {
-            String ip = request.getHeader(header);
-            if (ip != null && !ip.isEmpty() && !"unknown".equalsIgnoreCase(ip)) {
-                return ip.split(",")[0].trim();
+    // Copied up front: the servlet request must not be read from the executor thread
+    static HttpHeaders requestHeaders(HttpServletRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        for (String name : STREAM_REQUEST_HEADERS) {
+            Enumeration<String> values = request.getHeaders(name);
+            while (values != null && values.hasMoreElements()) {
+                headers.add(name, values.nextElement());
             }
         }
-        
-        return request.getRemoteAddr();
+        return headers;
     }
 }
-
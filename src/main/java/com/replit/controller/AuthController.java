@@ -3,12 +3,16 @@ package com.replit.controller;
 
 import com.replit.dto.AuthRequest;
 import com.replit.dto.AuthResponse;
+import com.replit.security.ClientAddressFilter;
 import com.replit.security.JwtService;
+import com.replit.security.PasswordHashingExecutor;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
 import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -19,8 +23,10 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/auth")
 @CrossOrigin(origins = {"https://*.replit.com", "https://*.repl.co"})
 public class AuthController {
@@ -29,62 +35,57 @@ public class AuthController {
 
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
+    private final PasswordHashingExecutor hashingExecutor;
 
-    public AuthController(AuthenticationManager authenticationManager, JwtService jwtService) {
+    public AuthController(AuthenticationManager authenticationManager, JwtService jwtService,
+                          PasswordHashingExecutor hashingExecutor) {
         this.authenticationManager = authenticationManager;
         this.jwtService = jwtService;
+        this.hashingExecutor = hashingExecutor;
     }
 
     @PostMapping("/login")
     @RateLimiter(name = "default", fallbackMethod = "loginRateLimitFallback")
-    public ResponseEntity<AuthResponse> authenticate(
+    public CompletableFuture<ResponseEntity<AuthResponse>> authenticate(
             @Valid @RequestBody AuthRequest request,
             HttpServletRequest httpRequest) {
         
-        String clientIp = getClientIpAddress(httpRequest);
+        String clientIp = ClientAddressFilter.clientAddress(httpRequest);
         
-        try {
-            Authentication authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(
-                            request.getUsername(),
-                            request.getPassword()
-                    )
-            );
+        // BCrypt is CPU-bound: verify on the bounded hashing pool, not on the servlet thread
+        return hashingExecutor.submit(() -> {
+            try {
+                Authentication authentication = authenticationManager.authenticate(
+                        new UsernamePasswordAuthenticationToken(
+                                request.getUsername(),
+                                request.getPassword()
+                        )
+                );
 
-            String token = jwtService.generateToken(request.getUsername());
-            logger.info("User {} authenticated successfully from IP {}", request.getUsername(), clientIp);
-            
-            return ResponseEntity.ok(new AuthResponse(token));
-        } catch (BadCredentialsException e) {
-            logger.warn("Authentication failed for user: {} from IP {}", request.getUsername(), clientIp);
-            throw new BadCredentialsException("Invalid credentials");
-        }
+                String token = jwtService.generateToken(request.getUsername());
+                logger.info("User {} authenticated successfully from IP {}", request.getUsername(), clientIp);
+
+                return ResponseEntity.ok(new AuthResponse(token));
+            } catch (BadCredentialsException e) {
+                logger.warn("Authentication failed for user: {} from IP {}", request.getUsername(), clientIp);
+                throw new BadCredentialsException("Invalid credentials");
+            }
+        });
     }
 
-    public ResponseEntity<Map<String, String>> loginRateLimitFallback(
+    // Only for rate limiter rejections; credential errors must still reach GlobalExceptionHandler
+    public CompletableFuture<ResponseEntity<Map<String, String>>> loginRateLimitFallback(
             AuthRequest request, 
             HttpServletRequest httpRequest, 
-            Exception ex) {
+            RequestNotPermitted ex) {
         
-        String clientIp = getClientIpAddress(httpRequest);
+        String clientIp = ClientAddressFilter.clientAddress(httpRequest);
         logger.warn("Rate limit exceeded for login attempt from IP: {}", clientIp);
         
         Map<String, String> error = new HashMap<>();
         error.put("error", "Rate limit exceeded");
         error.put("message", "Too many login attempts. Please try again later.");
         
-        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
-    }
-
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        return request.getRemoteAddr();
+        return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error));
     }
 }
@@ -0,0 +1,118 @@
+
+package com.replit.controller;
+
+import com.replit.audio.AudioStreamingService;
+import com.replit.audio.HlsService;
+import com.replit.audio.ReactiveAudioResponseWriter;
+import com.replit.security.ReactiveClientAddressFilter;
+import com.replit.service.AudioAccessGate;
+import com.replit.service.ReactiveAccessService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The audio endpoints of {@link AudioController} on the reactive runtime ({@code reactive}
+ * profile). An open stream holds a Netty channel and its buffers instead of a thread;
+ * access checks wait on the main app without blocking anything. Responses are built
+ * by the shared services on the bounded elastic scheduler (they may touch the disk) and
+ * written by {@link ReactiveAudioResponseWriter}.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api")
+@CrossOrigin(origins = {"https://*.replit.com", "https://*.repl.co"})
+public class ReactiveAudioController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveAudioController.class);
+    private final AudioAccessGate accessGate;
+    private final ReactiveAccessService accessService;
+    private final AudioStreamingService streamingService;
+    private final HlsService hlsService;
+    private final ReactiveAudioResponseWriter responseWriter;
+
+    @Value("${audio.stream.default-disposition:attachment}")
+    private String defaultDisposition;
+
+    public ReactiveAudioController(AudioAccessGate accessGate, ReactiveAccessService accessService,
+                                   AudioStreamingService streamingService, HlsService hlsService,
+                                   ReactiveAudioResponseWriter responseWriter) {
+        this.accessGate = accessGate;
+        this.accessService = accessService;
+        this.streamingService = streamingService;
+        this.hlsService = hlsService;
+        this.responseWriter = responseWriter;
+    }
+
+    @GetMapping("/audio/stream/{resourceId}")
+    public Mono<Void> streamAudioFile(
+            @PathVariable String resourceId,
+            @RequestParam(name = "disposition", required = false) String disposition,
+            Authentication authentication,
+            ServerWebExchange exchange) {
+
+        HttpHeaders streamHeaders = exchange.getRequest().getHeaders();
+        boolean inline = "inline".equalsIgnoreCase(disposition != null ? disposition : defaultDisposition);
+        return withAccess(resourceId, authentication, exchange, streamHeaders.containsKey(HttpHeaders.RANGE),
+                () -> streamingService.buildResponse(resourceId, streamHeaders, inline));
+    }
+
+    @GetMapping("/audio/hls/{resourceId}/playlist.m3u8")
+    public Mono<Void> hlsPlaylist(
+            @PathVariable String resourceId,
+            Authentication authentication,
+            ServerWebExchange exchange) {
+
+        return withAccess(resourceId, authentication, exchange, false,
+                () -> hlsService.playlist(resourceId, exchange.getRequest().getHeaders()));
+    }
+
+    @GetMapping("/audio/hls/{resourceId}/segments/{segment:\\d+}.mp3")
+    public Mono<Void> hlsSegment(
+            @PathVariable String resourceId,
+            @PathVariable int segment,
+            Authentication authentication,
+            ServerWebExchange exchange) {
+
+        return withAccess(resourceId, authentication, exchange, true,
+                () -> hlsService.segment(resourceId, segment, exchange.getRequest().getHeaders()));
+    }
+
+    private Mono<Void> withAccess(String resourceId, Authentication authentication, ServerWebExchange exchange,
+                                  boolean continuesStream,
+                                  Supplier<CompletableFuture<ResponseEntity<?>>> granted) {
+        String userId = authentication.getName();
+        String clientIp = ReactiveClientAddressFilter.clientAddress(exchange);
+
+        logger.debug("Audio request: user={}, resource={}, ip={}, uri={}",
+                userId, resourceId, clientIp, exchange.getRequest().getPath());
+
+        AudioAccessGate.Admission admission = accessGate.admit(resourceId, authentication, clientIp, continuesStream);
+        Mono<ResponseEntity<?>> response = switch (admission.decision()) {
+            case REJECTED -> Mono.just(admission.rejection());
+            case RECENT_GRANT -> Mono.<ResponseEntity<?>>fromFuture(granted)
+                    .subscribeOn(Schedulers.boundedElastic());
+            case LOCAL -> Mono.<ResponseEntity<?>>fromFuture(
+                            () -> accessGate.respond(resourceId, userId, admission.hasAccess(), granted))
+                    .subscribeOn(Schedulers.boundedElastic());
+            case REMOTE -> accessService.checkAccess(userId, resourceId, clientIp)
+                    .publishOn(Schedulers.boundedElastic())
+                    .<ResponseEntity<?>>flatMap(hasAccess ->
+                            Mono.fromFuture(accessGate.respond(resourceId, userId, hasAccess, granted)));
+        };
+        return response
+                .onErrorResume(e -> Mono.just(accessGate.failed(resourceId, userId, e)))
+                .flatMap(entity -> responseWriter.write(entity, exchange.getResponse()));
+    }
+}
@@ -0,0 +1,106 @@
+
+package com.replit.controller;
+
+import com.replit.audio.AudioStreamingService;
+import com.replit.audio.HlsService;
+import com.replit.security.ClientAddressFilter;
+import com.replit.security.StreamUrlSigner;
+import com.replit.service.AudioAccessGate;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stream paths authorized only by a signed token from {@code POST /api/audio/signed-url/{resourceId}}.
+ * No JWT, rate limit or access check runs here: one constant-time MAC comparison admits the
+ * request. The token sits in the path so relative HLS segment URIs carry it along.
+ *
+ * <p>No check has to be waited for: local files give already completed responses, so whole
+ * files and ranges can leave through sendfile. Objects still being fetched from an object
+ * store complete later, without holding the request thread.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/audio/signed/{token}/{resourceId}")
+@CrossOrigin(origins = {"https://*.replit.com", "https://*.repl.co"})
+public class SignedStreamController {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignedStreamController.class);
+
+    private final StreamUrlSigner signer;
+    private final AudioStreamingService streamingService;
+    private final HlsService hlsService;
+
+    @Value("${audio.stream.default-disposition:attachment}")
+    private String defaultDisposition;
+
+    public SignedStreamController(StreamUrlSigner signer, AudioStreamingService streamingService,
+                                  HlsService hlsService) {
+        this.signer = signer;
+        this.streamingService = streamingService;
+        this.hlsService = hlsService;
+    }
+
+    @GetMapping("/stream")
+    public CompletableFuture<ResponseEntity<?>> stream(
+            @PathVariable String token,
+            @PathVariable String resourceId,
+            @RequestParam(name = "disposition", required = false) String disposition,
+            HttpServletRequest request) {
+        ResponseEntity<?> rejected = verify(token, resourceId, request);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        boolean inline = "inline".equalsIgnoreCase(disposition != null ? disposition : defaultDisposition);
+        return streamingService.buildResponse(resourceId, AudioController.requestHeaders(request), inline);
+    }
+
+    @GetMapping("/hls/playlist.m3u8")
+    public CompletableFuture<ResponseEntity<?>> hlsPlaylist(
+            @PathVariable String token,
+            @PathVariable String resourceId,
+            HttpServletRequest request) {
+        ResponseEntity<?> rejected = verify(token, resourceId, request);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        return hlsService.playlist(resourceId, AudioController.requestHeaders(request));
+    }
+
+    @GetMapping("/hls/segments/{segment:\\d+}.mp3")
+    public CompletableFuture<ResponseEntity<?>> hlsSegment(
+            @PathVariable String token,
+            @PathVariable String resourceId,
+            @PathVariable int segment,
+            HttpServletRequest request) {
+        ResponseEntity<?> rejected = verify(token, resourceId, request);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        return hlsService.segment(resourceId, segment, AudioController.requestHeaders(request));
+    }
+
+    // Every failure looks the same to the caller
+    private ResponseEntity<?> verify(String token, String resourceId, HttpServletRequest request) {
+        if (!signer.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (!AudioAccessGate.isValidResourceId(resourceId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<String> userId = signer.verify(token, resourceId, ClientAddressFilter.clientAddress(request));
+        if (userId.isEmpty()) {
+            logger.debug("Rejected signed stream request for resource {}", resourceId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return null;
+    }
+}
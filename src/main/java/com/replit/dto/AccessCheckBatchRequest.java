@@ -0,0 +1,23 @@
+
+package com.replit.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AccessCheckBatchRequest {
+    private List<AccessCheckRequest> checks = new ArrayList<>();
+
+    public AccessCheckBatchRequest() {}
+
+    public AccessCheckBatchRequest(List<AccessCheckRequest> checks) {
+        this.checks = checks;
+    }
+
+    public List<AccessCheckRequest> getChecks() {
+        return checks;
+    }
+
+    public void setChecks(List<AccessCheckRequest> checks) {
+        this.checks = checks;
+    }
+}
@@ -0,0 +1,23 @@
+
+package com.replit.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AccessCheckBatchResponse {
+    private List<AccessCheckResult> results = new ArrayList<>();
+
+    public AccessCheckBatchResponse() {}
+
+    public AccessCheckBatchResponse(List<AccessCheckResult> results) {
+        this.results = results;
+    }
+
+    public List<AccessCheckResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<AccessCheckResult> results) {
+        this.results = results;
+    }
+}
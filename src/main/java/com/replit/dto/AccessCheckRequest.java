@@ -0,0 +1,30 @@
+
+package com.replit.dto;
+
+public class AccessCheckRequest {
+    private String userId;
+    private String resourceId;
+
+    public AccessCheckRequest() {}
+
+    public AccessCheckRequest(String userId, String resourceId) {
+        this.userId = userId;
+        this.resourceId = resourceId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(String resourceId) {
+        this.resourceId = resourceId;
+    }
+}
@@ -0,0 +1,40 @@
+
+package com.replit.dto;
+
+public class AccessCheckResult {
+    private String userId;
+    private String resourceId;
+    private boolean granted;
+
+    public AccessCheckResult() {}
+
+    public AccessCheckResult(String userId, String resourceId, boolean granted) {
+        this.userId = userId;
+        this.resourceId = resourceId;
+        this.granted = granted;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(String resourceId) {
+        this.resourceId = resourceId;
+    }
+
+    public boolean isGranted() {
+        return granted;
+    }
+
+    public void setGranted(boolean granted) {
+        this.granted = granted;
+    }
+}
@@ -0,0 +1,59 @@
+package com.replit.dto;
+
+/**
+ * Grant or revoke notification pushed by the main app. Targets a user, a resource,
+ * or a (user, resource) pair depending on which ids are set.
+ */
+public class AccessEvent {
+
+    public enum Type {
+        GRANT,
+        REVOKE
+    }
+
+    private long sequence;
+    private Type type;
+    private String userId;
+    private String resourceId;
+
+    public AccessEvent() {}
+
+    public AccessEvent(long sequence, Type type, String userId, String resourceId) {
+        this.sequence = sequence;
+        this.type = type;
+        this.userId = userId;
+        this.resourceId = resourceId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(String resourceId) {
+        this.resourceId = resourceId;
+    }
+}
@@ -0,0 +1,22 @@
+package com.replit.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AccessEventBatch {
+    private List<AccessEvent> events = new ArrayList<>();
+
+    public AccessEventBatch() {}
+
+    public AccessEventBatch(List<AccessEvent> events) {
+        this.events = events;
+    }
+
+    public List<AccessEvent> getEvents() {
+        return events;
+    }
+
+    public void setEvents(List<AccessEvent> events) {
+        this.events = events;
+    }
+}
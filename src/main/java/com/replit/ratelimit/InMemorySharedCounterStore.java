@@ -0,0 +1,94 @@
+
+package com.replit.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process stand-in for a shared counter store, for tests and single-node runs of the
+ * shared backend. Keeps one continuously refilled bucket per key.
+ */
+public class InMemorySharedCounterStore implements SharedCounterStore {
+
+    private final Cache<String, GlobalBucket> buckets;
+    private final LongSupplier nanoClock;
+
+    public InMemorySharedCounterStore(Duration idleTimeout) {
+        this(idleTimeout, System::nanoTime);
+    }
+
+    InMemorySharedCounterStore(Duration idleTimeout, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<Reservation> reserve(String key, int tokens, RateLimitProperties.Limit limit) {
+        return CompletableFuture.completedFuture(bucket(key, limit).take(tokens, nanoClock.getAsLong()));
+    }
+
+    @Override
+    public CompletableFuture<Void> release(String key, long tokens, RateLimitProperties.Limit limit) {
+        bucket(key, limit).giveBack(tokens, nanoClock.getAsLong());
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private GlobalBucket bucket(String key, RateLimitProperties.Limit limit) {
+        return buckets.get(key, ignored -> new GlobalBucket(limit, nanoClock.getAsLong()));
+    }
+
+    // A ReentrantLock rather than synchronized, so a virtual thread waiting for a bucket
+    // releases its carrier (see VirtualThreadPinningMonitor)
+    private static final class GlobalBucket {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long refilledAtNanos;
+
+        GlobalBucket(RateLimitProperties.Limit limit, long nowNanos) {
+            this.capacity = Math.max(1, limit.getCapacity());
+            this.tokensPerNano = limit.getRefillPerSecond() / 1_000_000_000d;
+            this.tokens = capacity;
+            this.refilledAtNanos = nowNanos;
+        }
+
+        Reservation take(int requested, long nowNanos) {
+            lock.lock();
+            try {
+                refill(nowNanos);
+                long granted = Math.min(requested, (long) tokens);
+                if (granted == 0) {
+                    return new Reservation(0, (long) Math.ceil((1 - tokens) / tokensPerNano));
+                }
+                tokens -= granted;
+                return new Reservation(granted, 0);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void giveBack(long returned, long nowNanos) {
+            lock.lock();
+            try {
+                refill(nowNanos);
+                tokens = Math.min(capacity, tokens + returned);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill(long nowNanos) {
+            tokens = Math.min(capacity, tokens + (nowNanos - refilledAtNanos) * tokensPerNano);
+            refilledAtNanos = nowNanos;
+        }
+    }
+}
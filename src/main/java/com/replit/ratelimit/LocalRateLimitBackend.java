@@ -0,0 +1,47 @@
+package com.replit.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Per-JVM token buckets. Limits are per replica, so the effective cluster-wide limit
+ * grows with the number of replicas. Buckets are evicted after the idle timeout; an
+ * evicted bucket was idle long enough to be full again, so eviction never loosens a
+ * limit that is still in effect.
+ * <p>
+ * There is deliberately no size-based eviction: it would drop active buckets and hand
+ * their keys a full burst again. Instead, once {@code max-keys} buckets are held, new
+ * keys are rejected until idle ones expire, while keys that already have a bucket keep
+ * being limited as usual. Size {@code max-keys} for the distinct users and IPs expected
+ * within one idle timeout.
+ */
+public class LocalRateLimitBackend implements RateLimitBackend {
+
+    private final Cache<String, TokenBucket> buckets;
+    private final long maxKeys;
+
+    public LocalRateLimitBackend(RateLimitProperties properties) {
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(properties.getIdleTimeout())
+                .build();
+        this.maxKeys = properties.getMaxKeys();
+    }
+
+    @Override
+    public long tryAcquire(String key, RateLimitProperties.Limit limit, long nowNanos) {
+        TokenBucket bucket = buckets.getIfPresent(key);
+        if (bucket == null) {
+            // Checked without a lock, so concurrent misses may overshoot the limit slightly
+            if (buckets.estimatedSize() >= maxKeys) {
+                return (long) (1_000_000_000L / limit.getRefillPerSecond());
+            }
+            bucket = buckets.get(key, ignored -> new TokenBucket(limit));
+        }
+        return bucket.tryAcquire(nowNanos);
+    }
+
+    @Override
+    public long trackedKeys() {
+        return buckets.estimatedSize();
+    }
+}
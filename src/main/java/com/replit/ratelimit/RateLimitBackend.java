@@ -0,0 +1,20 @@
+
+package com.replit.ratelimit;
+
+/**
+ * Where rate limit state lives. Implementations must answer from local memory:
+ * {@link #tryAcquire} is called on the request path and must never wait on the network.
+ */
+public interface RateLimitBackend {
+
+    /**
+     * Takes one token for {@code key}. Returns 0 if it was available, otherwise an
+     * estimate of the nanoseconds until a token will be.
+     */
+    long tryAcquire(String key, RateLimitProperties.Limit limit, long nowNanos);
+
+    /**
+     * Number of keys currently held in memory.
+     */
+    long trackedKeys();
+}
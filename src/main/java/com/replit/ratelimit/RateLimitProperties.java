@@ -0,0 +1,104 @@
+
+package com.replit.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keyed limits for audio stream starts ({@code rate-limit.audio.*}). Every principal is
+ * limited by the tier named after its JWT role (falling back to {@code default}), and
+ * every client IP by {@code per-ip}.
+ */
+@Component
+@ConfigurationProperties(prefix = "rate-limit.audio")
+public class RateLimitProperties {
+
+    public static final String DEFAULT_TIER = "default";
+
+    private boolean enabled = true;
+    private Duration idleTimeout = Duration.ofMinutes(10);
+    private long maxKeys = 1_000_000;
+    private Limit perIp = new Limit(20, 10);
+    private Map<String, Limit> tiers = new HashMap<>(Map.of(DEFAULT_TIER, new Limit(10, 5)));
+
+    public Limit tierFor(String role) {
+        Limit limit = role != null ? tiers.get(role.toLowerCase()) : null;
+        return limit != null ? limit : tiers.getOrDefault(DEFAULT_TIER, new Limit(10, 5));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(long maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public Limit getPerIp() {
+        return perIp;
+    }
+
+    public void setPerIp(Limit perIp) {
+        this.perIp = perIp;
+    }
+
+    public Map<String, Limit> getTiers() {
+        return tiers;
+    }
+
+    public void setTiers(Map<String, Limit> tiers) {
+        this.tiers = tiers;
+    }
+
+    /**
+     * Token bucket shape: up to {@code capacity} requests in a burst, refilled
+     * continuously at {@code refillPerSecond}.
+     */
+    public static class Limit {
+        private int capacity;
+        private double refillPerSecond;
+
+        public Limit() {}
+
+        public Limit(int capacity, double refillPerSecond) {
+            this.capacity = capacity;
+            this.refillPerSecond = refillPerSecond;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public double getRefillPerSecond() {
+            return refillPerSecond;
+        }
+
+        public void setRefillPerSecond(double refillPerSecond) {
+            this.refillPerSecond = refillPerSecond;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+
+package com.replit.ratelimit;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cluster-wide quota shared by all replicas (e.g. backed by Redis). Replicas reserve
+ * tokens in chunks and hand back what they did not use, so the store is called once per
+ * chunk rather than once per request.
+ */
+public interface SharedCounterStore {
+
+    /**
+     * Reserves up to {@code tokens} tokens from the global bucket for {@code key}.
+     */
+    CompletableFuture<Reservation> reserve(String key, int tokens, RateLimitProperties.Limit limit);
+
+    /**
+     * Returns unused tokens of an earlier reservation to the global bucket.
+     */
+    CompletableFuture<Void> release(String key, long tokens, RateLimitProperties.Limit limit);
+
+    /**
+     * @param granted         tokens actually reserved, possibly fewer than requested
+     * @param retryAfterNanos when nothing was granted, how long until a token is available
+     */
+    record Reservation(long granted, long retryAfterNanos) {
+    }
+}
@@ -0,0 +1,191 @@
+
+package com.replit.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster-wide limits on top of a {@link SharedCounterStore}. Each replica leases tokens
+ * from the store in chunks and spends them locally, so requests are answered from memory
+ * and the store sees one call per chunk. Leases are topped up in the background once
+ * they run low; unused tokens are handed back when a key goes idle.
+ *
+ * <p>A new lease starts with {@code initialCredit} tokens so that the first request of a
+ * key does not wait for the store. Spent credit is a debt: the lease's reservations ask
+ * for it on top of the chunk and pay it off before adding tokens, and an evicted lease
+ * reserves what is still owed. Only tokens the store issued are ever handed back. While
+ * the global bucket is empty, a replica can therefore run ahead of it by at most the
+ * credit per key, and that advance is charged as soon as the bucket refills.
+ *
+ * <p>While the store is unreachable, keys fall back to per-replica local buckets so the
+ * service keeps limiting rather than failing open or closed.
+ */
+public class SharedRateLimitBackend implements RateLimitBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedRateLimitBackend.class);
+
+    private final SharedCounterStore store;
+    private final LocalRateLimitBackend fallback;
+    private final int chunkSize;
+    private final long initialCredit;
+    private final Cache<String, Lease> leases;
+
+    // Metrics
+    private final Counter reservationCounter;
+    private final Counter reservationFailureCounter;
+    private final Counter fallbackCounter;
+
+    public SharedRateLimitBackend(SharedCounterStore store, RateLimitProperties properties,
+                                  int chunkSize, long initialCredit, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.fallback = new LocalRateLimitBackend(properties);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.initialCredit = Math.max(0, initialCredit);
+        this.leases = Caffeine.newBuilder()
+                .expireAfterAccess(properties.getIdleTimeout())
+                .maximumSize(properties.getMaxKeys())
+                .removalListener((String key, Lease lease, RemovalCause cause) -> {
+                    if (lease != null && cause.wasEvicted()) {
+                        lease.returnUnused(key);
+                    }
+                })
+                .build();
+
+        this.reservationCounter = Counter.builder("rate_limit_shared_reservations_total")
+                .description("Total number of token chunks reserved from the shared counter store")
+                .register(meterRegistry);
+        this.reservationFailureCounter = Counter.builder("rate_limit_shared_reservation_failures_total")
+                .description("Total number of failed reservations against the shared counter store")
+                .register(meterRegistry);
+        this.fallbackCounter = Counter.builder("rate_limit_shared_fallback_total")
+                .description("Total number of requests limited locally because the shared store was unavailable")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public long tryAcquire(String key, RateLimitProperties.Limit limit, long nowNanos) {
+        Lease lease = leases.get(key, ignored -> new Lease(limit, initialCredit));
+
+        if (lease.take()) {
+            if (lease.available() <= chunkSize / 2) {
+                lease.refill(key);
+            }
+            return 0;
+        }
+
+        lease.refill(key);
+        // The refill may have completed already (or a concurrent one just landed)
+        if (lease.take()) {
+            return 0;
+        }
+        if (lease.storeFailed) {
+            fallbackCounter.increment();
+            return fallback.tryAcquire(key, limit, nowNanos);
+        }
+        // A refill may already be on its way; otherwise wait as long as the store said
+        return Math.max(lease.retryAfterNanos, lease.emissionIntervalNanos);
+    }
+
+    @Override
+    public long trackedKeys() {
+        return leases.estimatedSize();
+    }
+
+    private static boolean takeOne(AtomicLong counter) {
+        while (true) {
+            long current = counter.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private final class Lease {
+
+        private final RateLimitProperties.Limit limit;
+        private final long emissionIntervalNanos;
+        // Reserved from the store
+        private final AtomicLong tokens = new AtomicLong();
+        // Not (yet) backed by the store; spending it adds to the debt
+        private final AtomicLong credit;
+        private final AtomicLong debt = new AtomicLong();
+        private final AtomicBoolean refillInFlight = new AtomicBoolean();
+        private volatile long retryAfterNanos;
+        private volatile boolean storeFailed;
+
+        Lease(RateLimitProperties.Limit limit, long initialCredit) {
+            this.limit = limit;
+            this.emissionIntervalNanos = (long) (1_000_000_000L / limit.getRefillPerSecond());
+            // A small optimistic credit so the first request of a key does not wait for a chunk
+            this.credit = new AtomicLong(initialCredit);
+        }
+
+        boolean take() {
+            if (takeOne(tokens)) {
+                return true;
+            }
+            if (takeOne(credit)) {
+                debt.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        long available() {
+            return tokens.get() + credit.get();
+        }
+
+        void refill(String key) {
+            if (!refillInFlight.compareAndSet(false, true)) {
+                return;
+            }
+            // Debt only grows meanwhile, so paying off this snapshot can never overpay
+            long owed = debt.get();
+            int requested = (int) Math.min(Integer.MAX_VALUE, Math.min(chunkSize, Math.max(1, limit.getCapacity())) + owed);
+            store.reserve(key, requested, limit).whenComplete((reservation, error) -> {
+                if (error != null) {
+                    reservationFailureCounter.increment();
+                    storeFailed = true;
+                    logger.debug("Shared rate limit reservation for {} failed: {}", key, error.getMessage());
+                } else {
+                    reservationCounter.increment();
+                    storeFailed = false;
+                    long paid = Math.min(reservation.granted(), owed);
+                    debt.addAndGet(-paid);
+                    tokens.addAndGet(reservation.granted() - paid);
+                    retryAfterNanos = reservation.granted() > paid ? 0 : reservation.retryAfterNanos();
+                }
+                refillInFlight.set(false);
+            });
+        }
+
+        // Unspent credit never came from the store and is dropped; spent credit still owed
+        // is reserved, or netted against the tokens handed back
+        void returnUnused(String key) {
+            credit.set(0);
+            long unused = tokens.getAndSet(0) - debt.getAndSet(0);
+            if (unused > 0) {
+                store.release(key, unused, limit).exceptionally(error -> {
+                    logger.debug("Could not return {} unused tokens for {}: {}", unused, key, error.getMessage());
+                    return null;
+                });
+            } else if (unused < 0) {
+                store.reserve(key, (int) Math.min(Integer.MAX_VALUE, -unused), limit).exceptionally(error -> {
+                    logger.debug("Could not charge {} credited tokens for {}: {}", -unused, key, error.getMessage());
+                    return null;
+                });
+            }
+        }
+    }
+}
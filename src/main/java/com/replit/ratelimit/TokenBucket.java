@@ -0,0 +1,38 @@
+
+package com.replit.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in GCRA form: the whole state is one "theoretical arrival time"
+ * updated with compare-and-set, so concurrent requests for the same key never block.
+ */
+final class TokenBucket {
+
+    private final long emissionIntervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+    TokenBucket(RateLimitProperties.Limit limit) {
+        this.emissionIntervalNanos = (long) (1_000_000_000L / limit.getRefillPerSecond());
+        this.toleranceNanos = emissionIntervalNanos * (Math.max(1, limit.getCapacity()) - 1);
+    }
+
+    /**
+     * Takes one token. Returns 0 if it was available, otherwise how many nanoseconds
+     * until the next token is refilled (nothing is consumed in that case).
+     */
+    long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long start = Math.max(current, nowNanos);
+            long waitNanos = start - nowNanos - toleranceNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (theoreticalArrival.compareAndSet(current, start + emissionIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+
+package com.replit.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Turns an {@code Authorization: Bearer} header into an {@link Authentication}; used by the
+ * JWT filters of both the servlet and the reactive runtime.
+ */
+@Component
+public class BearerTokenAuthenticator {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final JwtService jwtService;
+    private final VerifiedTokenCache tokenCache;
+
+    public BearerTokenAuthenticator(JwtService jwtService, VerifiedTokenCache tokenCache) {
+        this.jwtService = jwtService;
+        this.tokenCache = tokenCache;
+    }
+
+    /**
+     * Empty if the header is missing, not a bearer token, or the token does not verify.
+     */
+    public Optional<Authentication> authenticate(String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith(BEARER_PREFIX)) {
+            return Optional.empty();
+        }
+        String jwt = authorizationHeader.substring(BEARER_PREFIX.length());
+
+        // Clients resend the same token for hours: verify the signature only on a cache miss,
+        // and cache only tokens that passed verification
+        Optional<JwtPrincipal> principal = tokenCache.get(jwt);
+        if (principal.isEmpty()) {
+            principal = jwtService.validate(jwt);
+            principal.ifPresent(verified -> tokenCache.put(jwt, verified));
+        }
+        return principal.map(verified -> new UsernamePasswordAuthenticationToken(
+                verified,
+                null,
+                authorities(verified)
+        ));
+    }
+
+    private static List<GrantedAuthority> authorities(JwtPrincipal principal) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        if (principal.role() != null) {
+            authorities.add(new SimpleGrantedAuthority("ROLE_" + principal.role()));
+        }
+        for (String permission : principal.permissions()) {
+            authorities.add(new SimpleGrantedAuthority(permission));
+        }
+        return authorities;
+    }
+}
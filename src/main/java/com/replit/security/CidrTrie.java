@@ -0,0 +1,111 @@
+
+package com.replit.security;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
+/**
+ * Binary prefix trie of CIDR blocks, one per address family. A lookup walks at most
+ * 32 (IPv4) or 128 (IPv6) bits, regardless of how many blocks are configured.
+ */
+final class CidrTrie {
+
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+
+    /**
+     * Adds a block such as {@code 10.0.0.0/8} or {@code fd00::/8}; a bare address is a single host.
+     */
+    void add(String cidr) {
+        String[] parts = cidr.trim().split("/", 2);
+        byte[] address = parseLiteral(parts[0]);
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid CIDR block: " + cidr);
+        }
+        int maxBits = address.length * 8;
+        int prefixLength = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : maxBits;
+        if (prefixLength < 0 || prefixLength > maxBits) {
+            throw new IllegalArgumentException("Invalid prefix length in CIDR block: " + cidr);
+        }
+
+        Node node = address.length == 4 ? ipv4Root : ipv6Root;
+        for (int bit = 0; bit < prefixLength; bit++) {
+            if (bitAt(address, bit) == 0) {
+                node = node.zero != null ? node.zero : (node.zero = new Node());
+            } else {
+                node = node.one != null ? node.one : (node.one = new Node());
+            }
+        }
+        node.terminal = true;
+    }
+
+    boolean contains(byte[] address) {
+        Node node = address.length == 4 ? ipv4Root : ipv6Root;
+        for (int bit = 0; node != null; bit++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (bit == address.length * 8) {
+                return false;
+            }
+            node = bitAt(address, bit) == 0 ? node.zero : node.one;
+        }
+        return false;
+    }
+
+    /**
+     * Parses an IP literal without ever triggering a DNS lookup. Accepts an optional port
+     * ({@code 1.2.3.4:80}, {@code [::1]:80}). Returns null if the value is not an address.
+     */
+    static byte[] parseLiteral(String value) {
+        String candidate = value.trim();
+        if (candidate.startsWith("[")) {
+            int end = candidate.indexOf(']');
+            if (end < 0) {
+                return null;
+            }
+            candidate = candidate.substring(1, end);
+        } else if (candidate.indexOf(':') == candidate.lastIndexOf(':') && candidate.indexOf('.') > 0) {
+            // IPv4 with a port
+            int colon = candidate.indexOf(':');
+            if (colon > 0) {
+                candidate = candidate.substring(0, colon);
+            }
+        }
+
+        if (IPV4.matcher(candidate).matches()) {
+            String[] octets = candidate.split("\\.");
+            byte[] address = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                int octet = Integer.parseInt(octets[i]);
+                if (octet > 255) {
+                    return null;
+                }
+                address[i] = (byte) octet;
+            }
+            return address;
+        }
+        if (candidate.indexOf(':') < 0 || candidate.indexOf('%') >= 0) {
+            return null;
+        }
+        try {
+            // The bracketed form makes InetAddress reject non-literals instead of resolving them
+            return InetAddress.getByName("[" + candidate + "]").getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static int bitAt(byte[] address, int bit) {
+        return (address[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+    }
+
+    private static final class Node {
+        private Node zero;
+        private Node one;
+        private boolean terminal;
+    }
+}
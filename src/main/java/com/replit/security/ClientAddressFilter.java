@@ -0,0 +1,53 @@
+
+package com.replit.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Resolves the client address once per request (see {@link ClientAddressResolver}) and
+ * stores it as a request attribute for controllers, rate limiting and audit.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClientAddressFilter extends OncePerRequestFilter {
+
+    public static final String CLIENT_ADDRESS_ATTRIBUTE = ClientAddressFilter.class.getName() + ".clientAddress";
+
+    private final ClientAddressResolver resolver;
+
+    public ClientAddressFilter(ClientAddressResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Client address resolved for this request, or the socket peer if the filter did not run.
+     */
+    public static String clientAddress(HttpServletRequest request) {
+        Object address = request.getAttribute(CLIENT_ADDRESS_ATTRIBUTE);
+        return address instanceof String resolved ? resolved : request.getRemoteAddr();
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        Enumeration<String> forwardedFor = request.getHeaders("X-Forwarded-For");
+        request.setAttribute(CLIENT_ADDRESS_ATTRIBUTE, resolver.resolve(request.getRemoteAddr(),
+                forwardedFor != null ? Collections.list(forwardedFor) : List.of()));
+        filterChain.doFilter(request, response);
+    }
+}
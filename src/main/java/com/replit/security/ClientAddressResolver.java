@@ -0,0 +1,89 @@
+
+package com.replit.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+/**
+ * Resolves the client address of a request from its socket peer and
+ * {@code X-Forwarded-For}, for both the servlet and the reactive runtime.
+ *
+ * <p>{@code X-Forwarded-For} is only honoured when the connection comes from a trusted
+ * proxy ({@code client-address.trusted-proxies}). Hops are then walked from the right,
+ * skipping trusted proxies; the first untrusted hop is the client. Anything a client
+ * writes into the header itself sits left of that hop and is ignored, so the header
+ * cannot be used to pose as another address.
+ */
+@Component
+public class ClientAddressResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientAddressResolver.class);
+
+    private final CidrTrie trustedProxies = new CidrTrie();
+
+    public ClientAddressResolver(
+            @Value("${client-address.trusted-proxies:127.0.0.1/32,::1/128}") List<String> trustedProxyBlocks) {
+        for (String block : trustedProxyBlocks) {
+            if (!block.isBlank()) {
+                trustedProxies.add(block);
+            }
+        }
+        logger.info("Trusted proxies for X-Forwarded-For: {}", trustedProxyBlocks);
+    }
+
+    /**
+     * Resolves from every {@code X-Forwarded-For} field of a request, in the order received.
+     * A proxy may append a new field instead of extending the existing one, so they are
+     * walked as one comma-separated list (RFC 9110, section 5.3).
+     */
+    public String resolve(String remoteAddr, List<String> forwardedFor) {
+        if (forwardedFor == null || forwardedFor.isEmpty()) {
+            return remoteAddr;
+        }
+        return resolve(remoteAddr, forwardedFor.size() == 1 ? forwardedFor.get(0) : String.join(",", forwardedFor));
+    }
+
+    public String resolve(String remoteAddr, String forwardedFor) {
+        if (forwardedFor == null || forwardedFor.isBlank() || !isTrusted(remoteAddr)) {
+            return remoteAddr;
+        }
+
+        String client = remoteAddr;
+        int end = forwardedFor.length();
+        while (end > 0) {
+            int start = forwardedFor.lastIndexOf(',', end - 1);
+            String hop = forwardedFor.substring(start + 1, end).trim();
+            byte[] address = CidrTrie.parseLiteral(hop);
+            if (address == null) {
+                // Garbage in the chain: stop at the last address we could verify
+                break;
+            }
+            client = format(address);
+            if (!trustedProxies.contains(address)) {
+                break;
+            }
+            end = start < 0 ? 0 : start;
+        }
+        return client;
+    }
+
+    private static String format(byte[] address) {
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            // Only thrown for an illegal length, which parseLiteral never returns
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isTrusted(String remoteAddr) {
+        byte[] address = remoteAddr != null ? CidrTrie.parseLiteral(remoteAddr) : null;
+        return address != null && trustedProxies.contains(address);
+    }
+}
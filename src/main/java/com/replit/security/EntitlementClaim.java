@@ -0,0 +1,88 @@
+
+package com.replit.security;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resource entitlements carried in the signed {@code ent} JWT claim, e.g.
+ * {@code {"allow": ["podcast-", "free-"], "deny": ["premium-"]}}. Entries are
+ * resource-id prefixes; a deny match wins over an allow match.
+ */
+public final class EntitlementClaim {
+
+    public static final String CLAIM_NAME = "ent";
+
+    private final List<String> allowPrefixes;
+    private final List<String> denyPrefixes;
+    private final long issuedAtMillis;
+
+    public EntitlementClaim(List<String> allowPrefixes, List<String> denyPrefixes, long issuedAtMillis) {
+        this.allowPrefixes = List.copyOf(allowPrefixes);
+        this.denyPrefixes = List.copyOf(denyPrefixes);
+        this.issuedAtMillis = issuedAtMillis;
+    }
+
+    /**
+     * Parses the raw claim value; returns empty if it is missing or malformed.
+     */
+    public static Optional<EntitlementClaim> fromClaim(Object claim, long issuedAtMillis) {
+        if (!(claim instanceof Map<?, ?> map)) {
+            return Optional.empty();
+        }
+        List<String> allow = prefixes(map.get("allow"));
+        List<String> deny = prefixes(map.get("deny"));
+        if (allow.isEmpty() && deny.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new EntitlementClaim(allow, deny, issuedAtMillis));
+    }
+
+    private static List<String> prefixes(Object value) {
+        if (!(value instanceof Collection<?> values)) {
+            return List.of();
+        }
+        return values.stream()
+                .filter(String.class::isInstance)
+                .map(String.class::cast)
+                .filter(prefix -> !prefix.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Returns the decision for the resource, or empty if the claim does not cover it
+     * and the main app has to be asked.
+     */
+    public Optional<Boolean> evaluate(String resourceId) {
+        for (String prefix : denyPrefixes) {
+            if (resourceId.startsWith(prefix)) {
+                return Optional.of(false);
+            }
+        }
+        for (String prefix : allowPrefixes) {
+            if (resourceId.startsWith(prefix)) {
+                return Optional.of(true);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Like {@link #evaluate(String)}, but a grant from a token issued more than
+     * {@code maxGrantAge} before {@code nowMillis} is left to the main app. Denials always apply.
+     */
+    public Optional<Boolean> evaluate(String resourceId, Duration maxGrantAge, long nowMillis) {
+        Optional<Boolean> decision = evaluate(resourceId);
+        if (decision.orElse(false) && nowMillis - issuedAtMillis > maxGrantAge.toMillis()) {
+            return Optional.empty();
+        }
+        return decision;
+    }
+
+    public long getIssuedAtMillis() {
+        return issuedAtMillis;
+    }
+}
@@ -7,24 +7,25 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.lang.NonNull;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Optional;
 
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
-    private final JwtService jwtService;
+    private final BearerTokenAuthenticator authenticator;
 
-    public JwtAuthenticationFilter(JwtService jwtService) {
-        this.jwtService = jwtService;
+    public JwtAuthenticationFilter(BearerTokenAuthenticator authenticator) {
+        this.authenticator = authenticator;
     }
 
     @Override
@@ -34,29 +35,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             @NonNull FilterChain filterChain
     ) throws ServletException, IOException {
 
-        final String authHeader = request.getHeader("Authorization");
-        final String jwt;
-        final String userId;
-
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            filterChain.doFilter(request, response);
-            return;
-        }
-
-        jwt = authHeader.substring(7);
-        
         try {
-            userId = jwtService.extractUserId(jwt);
-
-            if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                if (jwtService.isTokenValid(jwt)) {
-                    Authentication authToken = new UsernamePasswordAuthenticationToken(
-                            userId,
-                            null,
-                            new ArrayList<>()
-                    );
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                    logger.debug("User {} authenticated successfully", userId);
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                Optional<Authentication> authentication = authenticator.authenticate(request.getHeader("Authorization"));
+                if (authentication.isPresent()) {
+                    SecurityContextHolder.getContext().setAuthentication(authentication.get());
+                    logger.debug("User {} authenticated successfully", authentication.get().getName());
                 }
             }
         } catch (Exception e) {
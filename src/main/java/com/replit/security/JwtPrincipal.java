@@ -0,0 +1,33 @@
+
+package com.replit.security;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Claims of a verified token, parsed once by {@link JwtService#validate(String)} and kept
+ * as the principal of the request's {@code Authentication}.
+ *
+ * @param entitlements the {@code ent} claim, or {@code null} if the token has none
+ */
+public record JwtPrincipal(
+        String subject,
+        Instant issuedAt,
+        Instant expiresAt,
+        String issuer,
+        String audience,
+        String role,
+        List<String> permissions,
+        EntitlementClaim entitlements) implements AuthenticatedPrincipal {
+
+    public JwtPrincipal {
+        permissions = permissions == null ? List.of() : List.copyOf(permissions);
+    }
+
+    @Override
+    public String getName() {
+        return subject;
+    }
+}
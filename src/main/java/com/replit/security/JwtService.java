@@ -9,8 +9,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
 import java.security.Key;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.Function;
 
 @Service
@@ -30,6 +35,60 @@ public class JwtService {
     @Value("${jwt.audience}")
     private String expectedAudience;
 
+    // Built once; decoding the secret and building a parser per call showed up on every request
+    private Key signingKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    void init() {
+        this.signingKey = getSignInKey();
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
+
+    /**
+     * Verifies the signature once and checks expiry, issuer and audience.
+     * Returns the token's claims as a principal, or empty if the token is not valid.
+     */
+    public Optional<JwtPrincipal> validate(String token) {
+        Claims claims;
+        try {
+            claims = parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.debug("Token validation failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+        if (claims.getSubject() == null
+                || claims.getExpiration() == null
+                || !expectedIssuer.equals(claims.getIssuer())
+                || !expectedAudience.equals(claims.getAudience())) {
+            logger.warn("Token rejected: missing subject/expiry or wrong issuer/audience");
+            return Optional.empty();
+        }
+        return Optional.of(toPrincipal(claims));
+    }
+
+    private static JwtPrincipal toPrincipal(Claims claims) {
+        Instant issuedAt = claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null;
+        String permissions = claims.get("permissions", String.class);
+        List<String> permissionList = permissions == null || permissions.isBlank()
+                ? List.of()
+                : Arrays.stream(permissions.split(",")).map(String::trim).filter(p -> !p.isEmpty()).toList();
+        EntitlementClaim entitlements = EntitlementClaim.fromClaim(
+                claims.get(EntitlementClaim.CLAIM_NAME),
+                issuedAt != null ? issuedAt.toEpochMilli() : 0).orElse(null);
+        return new JwtPrincipal(
+                claims.getSubject(),
+                issuedAt,
+                claims.getExpiration().toInstant(),
+                claims.getIssuer(),
+                claims.getAudience(),
+                claims.get("role", String.class),
+                permissionList,
+                entitlements);
+    }
+
     public String extractUserId(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -49,7 +108,7 @@ public class JwtService {
                 .setSubject(userId)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
@@ -59,12 +118,7 @@ public class JwtService {
     }
 
     public boolean isTokenValid(String token) {
-        try {
-            return !isTokenExpired(token) && isIssuerValid(token) && isAudienceValid(token);
-        } catch (Exception e) {
-            logger.error("Token validation failed: {}", e.getMessage());
-            return false;
-        }
+        return validate(token).isPresent();
     }
     
     public boolean isIssuerValid(String token) {
@@ -105,12 +159,7 @@ public class JwtService {
 
     private Claims extractAllClaims(String token) {
         try {
-            return Jwts
-                    .parserBuilder()
-                    .setSigningKey(getSignInKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            return parser.parseClaimsJws(token).getBody();
         } catch (MalformedJwtException e) {
             logger.error("Invalid JWT token: {}", e.getMessage());
             throw new RuntimeException("Invalid JWT token");
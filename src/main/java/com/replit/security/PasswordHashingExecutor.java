@@ -0,0 +1,100 @@
+
+package com.replit.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated, bounded pool for CPU-bound credential verification (BCrypt). Keeps a login
+ * storm off the request and streaming threads: at most one hashing thread per core, and
+ * once the queue is full further logins are rejected instead of piling up.
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    // Metrics
+    private final Timer hashTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rejectedCounter;
+
+    public PasswordHashingExecutor(
+            @Value("${auth.hashing.threads:0}") int threads,
+            @Value("${auth.hashing.queue-capacity:64}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "PasswordHash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.hashTimer = Timer.builder("auth_password_hash_duration")
+                .description("Time spent verifying credentials on the hashing pool")
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("auth_password_hash_queue_wait")
+                .description("Time a login waited in the hashing queue before verification started")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth_password_hash_rejected_total")
+                .description("Total number of logins rejected because the hashing queue was full")
+                .register(meterRegistry);
+        Gauge.builder("auth_password_hash_queue_depth", executor, pool -> pool.getQueue().size())
+                .description("Number of logins waiting for a hashing thread")
+                .register(meterRegistry);
+        Gauge.builder("auth_password_hash_active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Number of hashing threads currently verifying credentials")
+                .register(meterRegistry);
+
+        logger.info("Password hashing pool: threads={}, queueCapacity={}", poolSize, queueCapacity);
+    }
+
+    /**
+     * Runs {@code task} on the hashing pool. If the queue is full the returned future
+     * fails immediately with {@link RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long enqueuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long startedAt = System.nanoTime();
+                queueWaitTimer.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.get();
+                } finally {
+                    hashTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
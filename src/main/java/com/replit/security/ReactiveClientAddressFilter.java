@@ -0,0 +1,52 @@
+
+package com.replit.security;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.lang.NonNull;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Reactive counterpart of {@link ClientAddressFilter}: resolves the client address once per
+ * exchange and stores it as an exchange attribute. Added to the reactive security chain
+ * by {@link ReactiveSecurityConfig}.
+ */
+public class ReactiveClientAddressFilter implements WebFilter {
+
+    public static final String CLIENT_ADDRESS_ATTRIBUTE = ReactiveClientAddressFilter.class.getName() + ".clientAddress";
+
+    private final ClientAddressResolver resolver;
+
+    public ReactiveClientAddressFilter(ClientAddressResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Client address resolved for this exchange, or the socket peer if the filter did not run.
+     */
+    public static String clientAddress(ServerWebExchange exchange) {
+        String address = exchange.getAttribute(CLIENT_ADDRESS_ATTRIBUTE);
+        return address != null ? address : remoteAddress(exchange.getRequest());
+    }
+
+    @Override
+    @NonNull
+    public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        exchange.getAttributes().put(CLIENT_ADDRESS_ATTRIBUTE,
+                resolver.resolve(remoteAddress(request), request.getHeaders().getOrEmpty("X-Forwarded-For")));
+        return chain.filter(exchange);
+    }
+
+    private static String remoteAddress(ServerHttpRequest request) {
+        InetSocketAddress remote = request.getRemoteAddress();
+        if (remote == null) {
+            return null;
+        }
+        return remote.getAddress() != null ? remote.getAddress().getHostAddress() : remote.getHostString();
+    }
+}
@@ -0,0 +1,49 @@
+
+package com.replit.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Reactive counterpart of {@link JwtAuthenticationFilter}. A verified token puts its
+ * {@link Authentication} into the Reactor context of the rest of the chain; nothing is
+ * stored per session. Token verification is CPU-only and cached, so it runs on the event loop.
+ */
+public class ReactiveJwtAuthenticationFilter implements WebFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveJwtAuthenticationFilter.class);
+    private final BearerTokenAuthenticator authenticator;
+
+    public ReactiveJwtAuthenticationFilter(BearerTokenAuthenticator authenticator) {
+        this.authenticator = authenticator;
+    }
+
+    @Override
+    @NonNull
+    public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        Optional<Authentication> authentication;
+        try {
+            authentication = authenticator.authenticate(exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        } catch (Exception e) {
+            logger.error("Cannot set user authentication: {}", e.getMessage());
+            authentication = Optional.empty();
+        }
+
+        if (authentication.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        logger.debug("User {} authenticated successfully", authentication.get().getName());
+        return chain.filter(exchange)
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication.get()));
+    }
+}
@@ -1,6 +1,8 @@
 
 package com.replit.security;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -11,6 +13,7 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -25,15 +28,23 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import java.util.Arrays;
 
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebSecurity
 public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
     private final SecurityHeadersFilter securityHeadersFilter;
+    private final ClientAddressFilter clientAddressFilter;
 
-    public SecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter, SecurityHeadersFilter securityHeadersFilter) {
+    // BCrypt cost factor; stored hashes with a lower cost are re-hashed on the next successful login
+    @Value("${auth.bcrypt.strength:10}")
+    private int bcryptStrength;
+
+    public SecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter, SecurityHeadersFilter securityHeadersFilter,
+                          ClientAddressFilter clientAddressFilter) {
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
         this.securityHeadersFilter = securityHeadersFilter;
+        this.clientAddressFilter = clientAddressFilter;
     }
 
     @Bean
@@ -56,13 +67,18 @@ public class SecurityConfig {
                         .requestMatchers("/health").permitAll()
                         .requestMatchers("/actuator/**").permitAll()
                         .requestMatchers("/").permitAll()
+                        // Authenticated by an HMAC signature in AccessEventController
+                        .requestMatchers("/api/internal/access-events/**").permitAll()
+                        // Authorized by the signed token in the path (StreamUrlSigner), not by JWT
+                        .requestMatchers("/api/audio/signed/**").permitAll()
                         .requestMatchers("/api/audio/**").authenticated()
                         .requestMatchers("/api/admin/**").authenticated()
                         .requestMatchers("/api/test").authenticated()
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
-                .addFilterBefore(securityHeadersFilter, JwtAuthenticationFilter.class);
+                .addFilterBefore(securityHeadersFilter, JwtAuthenticationFilter.class)
+                .addFilterBefore(clientAddressFilter, SecurityHeadersFilter.class);
 
         return http.build();
     }
@@ -94,7 +110,7 @@ public class SecurityConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     @Bean
@@ -104,6 +120,9 @@ public class SecurityConfig {
         DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider();
         authenticationProvider.setUserDetailsService(userDetailsService);
         authenticationProvider.setPasswordEncoder(passwordEncoder);
+        if (userDetailsService instanceof UserDetailsPasswordService passwordService) {
+            authenticationProvider.setUserDetailsPasswordService(passwordService);
+        }
 
         return new ProviderManager(authenticationProvider);
     }
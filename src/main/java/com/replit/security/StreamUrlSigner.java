@@ -0,0 +1,162 @@
+
+package com.replit.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Issues and verifies pre-authorized stream tokens: an HMAC-SHA256 over user, resource,
+ * expiry and (with {@code stream-url.bind-client-ip}) the client address, keyed with
+ * {@code stream-url.secret}. A token is handed out after one full access check and is then
+ * the only credential the signed stream paths look at, until it expires after
+ * {@code stream-url.ttl}; that TTL is also how long a revocation can go unnoticed.
+ *
+ * <p>Token format: {@code <expiry epoch seconds>.<0|1 ip bound>.<base64url user>.<base64url mac>}.
+ */
+@Component
+public class StreamUrlSigner {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamUrlSigner.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec signingKey;
+    private final Duration ttl;
+    private final boolean bindClientIp;
+    private final Clock clock;
+
+    // Metrics
+    private final Counter issuedCounter;
+    private final Counter verifiedCounter;
+    private final Counter expiredCounter;
+    private final Counter invalidCounter;
+
+    @Autowired
+    public StreamUrlSigner(@Value("${stream-url.secret:}") String secret,
+                           @Value("${stream-url.ttl:PT5M}") Duration ttl,
+                           @Value("${stream-url.bind-client-ip:false}") boolean bindClientIp,
+                           MeterRegistry meterRegistry) {
+        this(secret, ttl, bindClientIp, meterRegistry, Clock.systemUTC());
+    }
+
+    StreamUrlSigner(String secret, Duration ttl, boolean bindClientIp, MeterRegistry meterRegistry, Clock clock) {
+        this.signingKey = secret.isBlank()
+                ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.ttl = ttl;
+        this.bindClientIp = bindClientIp;
+        this.clock = clock;
+
+        this.issuedCounter = Counter.builder("stream_url_issued_total")
+                .description("Total number of signed stream URLs issued")
+                .register(meterRegistry);
+        this.verifiedCounter = Counter.builder("stream_url_verified_total")
+                .description("Total number of signed stream requests admitted on their signature")
+                .register(meterRegistry);
+        this.expiredCounter = Counter.builder("stream_url_rejected_total")
+                .description("Total number of signed stream requests rejected")
+                .tag("reason", "expired")
+                .register(meterRegistry);
+        this.invalidCounter = Counter.builder("stream_url_rejected_total")
+                .description("Total number of signed stream requests rejected")
+                .tag("reason", "invalid")
+                .register(meterRegistry);
+
+        if (signingKey == null) {
+            logger.warn("stream-url.secret is not set - signed stream URLs are disabled");
+        } else {
+            logger.info("Signed stream URLs enabled: ttl={}, bindClientIp={}", ttl, bindClientIp);
+        }
+    }
+
+    public boolean isEnabled() {
+        return signingKey != null;
+    }
+
+    public record SignedToken(String token, Instant expiresAt) {
+    }
+
+    public SignedToken issue(String userId, String resourceId, String clientIp) {
+        if (signingKey == null) {
+            throw new IllegalStateException("Signed stream URLs are disabled");
+        }
+        long expiresAt = clock.instant().plus(ttl).getEpochSecond();
+        String ipBound = bindClientIp ? "1" : "0";
+        byte[] mac = mac(userId, resourceId, expiresAt, bindClientIp ? clientIp : null);
+        issuedCounter.increment();
+        String token = expiresAt + "." + ipBound + "."
+                + ENCODER.encodeToString(userId.getBytes(StandardCharsets.UTF_8)) + "."
+                + ENCODER.encodeToString(mac);
+        return new SignedToken(token, Instant.ofEpochSecond(expiresAt));
+    }
+
+    /**
+     * Returns the user the token was issued to if it is unexpired and its MAC matches this
+     * resource (and client address, if bound). The MAC is compared in constant time.
+     */
+    public Optional<String> verify(String token, String resourceId, String clientIp) {
+        if (signingKey == null || token == null) {
+            return Optional.empty();
+        }
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 4 || !("0".equals(parts[1]) || "1".equals(parts[1]))) {
+            invalidCounter.increment();
+            return Optional.empty();
+        }
+
+        long expiresAt;
+        String userId;
+        byte[] provided;
+        try {
+            expiresAt = Long.parseLong(parts[0]);
+            userId = new String(DECODER.decode(parts[2]), StandardCharsets.UTF_8);
+            provided = DECODER.decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            invalidCounter.increment();
+            return Optional.empty();
+        }
+
+        byte[] expected = mac(userId, resourceId, expiresAt, "1".equals(parts[1]) ? clientIp : null);
+        if (!MessageDigest.isEqual(expected, provided)) {
+            invalidCounter.increment();
+            return Optional.empty();
+        }
+        // Checked after the MAC so the expiry cannot be probed with forged tokens
+        if (clock.instant().getEpochSecond() > expiresAt) {
+            expiredCounter.increment();
+            return Optional.empty();
+        }
+        verifiedCounter.increment();
+        return Optional.of(userId);
+    }
+
+    private byte[] mac(String userId, String resourceId, long expiresAt, String clientIp) {
+        String payload = "stream-url/v1\n" + userId + "\n" + resourceId + "\n" + expiresAt + "\n"
+                + (clientIp != null ? clientIp : "*");
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(signingKey);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
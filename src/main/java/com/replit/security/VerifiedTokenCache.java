@@ -0,0 +1,133 @@
+
+package com.replit.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Bounded cache of successfully verified tokens, keyed by the token's SHA-256 digest so
+ * raw bearer tokens are not kept in memory. An entry never outlives the token's own
+ * expiry. Only valid tokens are ever put here.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+    private final boolean enabled;
+    private final Duration maxTtl;
+    private final Clock clock;
+    private final Cache<TokenDigest, JwtPrincipal> cache;
+
+    // Metrics
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    @Autowired
+    public VerifiedTokenCache(
+            @Value("${jwt.token-cache.enabled:true}") boolean enabled,
+            @Value("${jwt.token-cache.max-size:100000}") long maxSize,
+            @Value("${jwt.token-cache.max-ttl:PT10M}") Duration maxTtl,
+            MeterRegistry meterRegistry) {
+        this(enabled, maxSize, maxTtl, meterRegistry, Clock.systemUTC(), Ticker.systemTicker());
+    }
+
+    VerifiedTokenCache(boolean enabled, long maxSize, Duration maxTtl, MeterRegistry meterRegistry,
+                       Clock clock, Ticker ticker) {
+        this.enabled = enabled;
+        this.maxTtl = maxTtl;
+        this.clock = clock;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry())
+                .ticker(ticker)
+                .build();
+
+        this.hitCounter = Counter.builder("jwt_token_cache_hits_total")
+                .description("Total number of bearer tokens served from the verified-token cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("jwt_token_cache_misses_total")
+                .description("Total number of bearer tokens that needed signature verification")
+                .register(meterRegistry);
+        Gauge.builder("jwt_token_cache_size", cache, Cache::estimatedSize)
+                .description("Number of verified tokens currently cached")
+                .register(meterRegistry);
+
+        logger.info("Verified-token cache enabled={}, maxSize={}, maxTtl={}", enabled, maxSize, maxTtl);
+    }
+
+    public Optional<JwtPrincipal> get(String token) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        JwtPrincipal principal = cache.getIfPresent(TokenDigest.of(token));
+        if (principal == null || !principal.expiresAt().isAfter(clock.instant())) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+        return Optional.of(principal);
+    }
+
+    public void put(String token, JwtPrincipal principal) {
+        if (enabled) {
+            cache.put(TokenDigest.of(token), principal);
+        }
+    }
+
+    private class TokenExpiry implements Expiry<TokenDigest, JwtPrincipal> {
+
+        @Override
+        public long expireAfterCreate(TokenDigest key, JwtPrincipal principal, long currentTime) {
+            Duration untilExpiry = Duration.between(clock.instant(), principal.expiresAt());
+            if (untilExpiry.isNegative()) {
+                return 0;
+            }
+            return (untilExpiry.compareTo(maxTtl) < 0 ? untilExpiry : maxTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenDigest key, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(TokenDigest key, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    // SHA-256 of the token as four longs: cheap equals/hashCode without keeping the token
+    record TokenDigest(long a, long b, long c, long d) {
+
+        static TokenDigest of(String token) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+                ByteBuffer buffer = ByteBuffer.wrap(digest);
+                return new TokenDigest(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+            } catch (NoSuchAlgorithmException e) {
+                // Every JRE is required to provide SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
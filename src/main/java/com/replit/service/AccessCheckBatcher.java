@@ -0,0 +1,197 @@
+
+package com.replit.service;
+
+import com.replit.dto.AccessCheckBatchRequest;
+import com.replit.dto.AccessCheckBatchResponse;
+import com.replit.dto.AccessCheckRequest;
+import com.replit.dto.AccessCheckResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects pending access checks for a short window (or until a batch is full)
+ * and sends them to the main app as one bulk request.
+ */
+@Component
+public class AccessCheckBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessCheckBatcher.class);
+
+    private final MainAppClient mainAppClient;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "AccessBatch-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<PendingCheck> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    // Metrics
+    private final Counter batchCounter;
+    private final Counter batchFailureCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    public AccessCheckBatcher(
+            MainAppClient mainAppClient,
+            @Value("${main-app.batch.enabled:false}") boolean enabled,
+            @Value("${main-app.batch.window:PT0.001S}") Duration window,
+            @Value("${main-app.batch.max-size:64}") int maxBatchSize,
+            MeterRegistry meterRegistry) {
+        this.mainAppClient = mainAppClient;
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+
+        this.batchCounter = Counter.builder("access_check_batches_total")
+                .description("Total number of bulk access check requests sent to the main app")
+                .register(meterRegistry);
+        this.batchFailureCounter = Counter.builder("access_check_batch_failures_total")
+                .description("Total number of bulk access check requests that failed")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("access_check_batch_size")
+                .description("Number of access checks per bulk request")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a check for the next batch. The future completes with the main app's
+     * decision, or exceptionally if the batch failed or the main app omitted the key.
+     */
+    public CompletableFuture<Boolean> submit(String userId, String resourceId) {
+        PendingCheck check = new PendingCheck(userId, resourceId, new CompletableFuture<>());
+        List<PendingCheck> fullBatch = null;
+
+        lock.lock();
+        try {
+            pending.add(check);
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = takePending();
+            } else if (pending.size() == 1) {
+                scheduledFlush = scheduler.schedule(this::flushScheduled, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (fullBatch != null) {
+            dispatch(fullBatch);
+        }
+        return check.result();
+    }
+
+    private void flushScheduled() {
+        List<PendingCheck> batch;
+        lock.lock();
+        try {
+            batch = pending.isEmpty() ? null : takePending();
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    // Must be called with the lock held
+    private List<PendingCheck> takePending() {
+        List<PendingCheck> batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(List<PendingCheck> batch) {
+        batchCounter.increment();
+        batchSizeSummary.record(batch.size());
+
+        List<AccessCheckRequest> checks = new ArrayList<>(batch.size());
+        for (PendingCheck check : batch) {
+            checks.add(new AccessCheckRequest(check.userId(), check.resourceId()));
+        }
+
+        mainAppClient.checkAccessBatch(new AccessCheckBatchRequest(checks))
+                .whenComplete((response, error) -> {
+                    Throwable failure = error;
+                    if (failure == null) {
+                        try {
+                            complete(batch, response);
+                            return;
+                        } catch (RuntimeException e) {
+                            // Thrown out of this callback it would be swallowed, leaving every waiter hanging
+                            failure = e;
+                        }
+                    }
+                    batchFailureCounter.increment();
+                    logger.warn("Bulk access check of {} entries failed: {}", batch.size(), failure.getMessage());
+                    failAll(batch, failure);
+                });
+    }
+
+    private static void complete(List<PendingCheck> batch, AccessCheckBatchResponse response) {
+        if (response == null || response.getResults() == null) {
+            throw new IllegalStateException("Main app batch response has no results");
+        }
+        Map<AccessDecisionCache.AccessKey, Boolean> decisions = new HashMap<>();
+        for (AccessCheckResult result : response.getResults()) {
+            if (result == null) {
+                throw new IllegalStateException("Main app batch response has a null result");
+            }
+            decisions.put(new AccessDecisionCache.AccessKey(result.getUserId(), result.getResourceId()),
+                    result.isGranted());
+        }
+        for (PendingCheck check : batch) {
+            Boolean granted = decisions.get(new AccessDecisionCache.AccessKey(check.userId(), check.resourceId()));
+            if (granted != null) {
+                check.result().complete(granted);
+            } else {
+                check.result().completeExceptionally(new IllegalStateException(
+                        "Main app batch response has no decision for resource " + check.resourceId()));
+            }
+        }
+    }
+
+    private static void failAll(List<PendingCheck> batch, Throwable cause) {
+        for (PendingCheck check : batch) {
+            check.result().completeExceptionally(cause);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+        flushScheduled();
+    }
+
+    private record PendingCheck(String userId, String resourceId, CompletableFuture<Boolean> result) {
+    }
+}
@@ -0,0 +1,233 @@
+
+package com.replit.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of access decisions returned by the main application.
+ * Grants and denials have separate TTLs; the total size is capped by an
+ * approximate memory budget rather than an entry count. Entries are kept
+ * for an extra staleness window after their TTL so they can be served as a
+ * fallback while the main app is unavailable.
+ */
+@Component
+public class AccessDecisionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessDecisionCache.class);
+
+    // Rough per-entry overhead of the cache node, key record and decision record
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final boolean enabled;
+    private final Duration grantTtl;
+    private final Duration denyTtl;
+    private final Duration staleWindow;
+    private final Cache<AccessKey, AccessDecision> cache;
+    // Grants that follow-up Range requests of the same stream may reuse without a new check
+    private final Cache<AccessKey, Boolean> recentGrants;
+    // Bumped on every invalidation so decisions fetched before it are not cached after it
+    private final AtomicLong generation = new AtomicLong();
+
+    // Metrics
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    public AccessDecisionCache(
+            @Value("${access-cache.enabled:true}") boolean enabled,
+            @Value("${access-cache.grant-ttl:PT5M}") Duration grantTtl,
+            @Value("${access-cache.deny-ttl:PT30S}") Duration denyTtl,
+            @Value("${access-cache.max-memory-bytes:33554432}") long maxMemoryBytes,
+            @Value("${access-cache.stale-window:PT10M}") Duration staleWindow,
+            @Value("${access-cache.range-grant-ttl:PT30S}") Duration rangeGrantTtl,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.grantTtl = grantTtl;
+        this.denyTtl = denyTtl;
+        this.staleWindow = staleWindow;
+
+        this.hitCounter = Counter.builder("access_cache_hits_total")
+                .description("Total number of access decisions served from cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("access_cache_misses_total")
+                .description("Total number of access decisions not found in cache")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("access_cache_evictions_total")
+                .description("Total number of access decisions evicted by size or TTL")
+                .register(meterRegistry);
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxMemoryBytes)
+                .weigher((AccessKey key, AccessDecision decision) -> estimateBytes(key))
+                .expireAfter(new DecisionExpiry())
+                .removalListener((key, value, cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictionCounter.increment();
+                    }
+                })
+                .build();
+
+        this.recentGrants = Caffeine.newBuilder()
+                .maximumWeight(maxMemoryBytes / 4)
+                .weigher((AccessKey key, Boolean granted) -> estimateBytes(key))
+                .expireAfterWrite(rangeGrantTtl)
+                .build();
+
+        Gauge.builder("access_cache_size", cache, Cache::estimatedSize)
+                .description("Number of access decisions currently cached")
+                .register(meterRegistry);
+
+        logger.info("Access decision cache enabled={}, grantTtl={}, denyTtl={}, staleWindow={}, rangeGrantTtl={}, maxMemoryBytes={}",
+                enabled, grantTtl, denyTtl, staleWindow, rangeGrantTtl, maxMemoryBytes);
+    }
+
+    public Optional<Boolean> get(String userId, String resourceId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        AccessDecision decision = cache.getIfPresent(new AccessKey(userId, resourceId));
+        if (decision == null || decision.ageMillis() > ttlFor(decision).toMillis()) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+        return Optional.of(decision.granted());
+    }
+
+    /**
+     * Returns a decision past its TTL but still within the staleness window.
+     * Only meant as a fallback when the main app cannot be asked.
+     */
+    public Optional<Boolean> getStale(String userId, String resourceId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        AccessDecision decision = cache.getIfPresent(new AccessKey(userId, resourceId));
+        if (decision == null || decision.ageMillis() > ttlFor(decision).plus(staleWindow).toMillis()) {
+            return Optional.empty();
+        }
+        return Optional.of(decision.granted());
+    }
+
+    /**
+     * Current invalidation generation; pass it to {@link #putIfCurrent} and
+     * {@link #markRecentGrant} for decisions obtained after reading it.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the decision only if no invalidation happened since {@code fetchGeneration},
+     * so a revocation cannot be overwritten by an answer that was already in flight.
+     */
+    public void putIfCurrent(String userId, String resourceId, boolean granted, long fetchGeneration) {
+        if (!enabled || generation.get() != fetchGeneration) {
+            return;
+        }
+        AccessKey key = new AccessKey(userId, resourceId);
+        cache.put(key, new AccessDecision(granted, System.currentTimeMillis()));
+        // An invalidation may have slipped in between the check and the put
+        if (generation.get() != fetchGeneration) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Remembers a grant that was just served so Range requests continuing the same stream
+     * can skip the full check for {@code access-cache.range-grant-ttl}. Like
+     * {@link #putIfCurrent}, ignored if an invalidation happened since {@code decisionGeneration}.
+     */
+    public void markRecentGrant(String userId, String resourceId, long decisionGeneration) {
+        if (!enabled || generation.get() != decisionGeneration) {
+            return;
+        }
+        AccessKey key = new AccessKey(userId, resourceId);
+        recentGrants.put(key, Boolean.TRUE);
+        if (generation.get() != decisionGeneration) {
+            recentGrants.invalidate(key);
+        }
+    }
+
+    public boolean hasRecentGrant(String userId, String resourceId) {
+        return enabled && recentGrants.getIfPresent(new AccessKey(userId, resourceId)) != null;
+    }
+
+    public void invalidate(String userId, String resourceId) {
+        generation.incrementAndGet();
+        AccessKey key = new AccessKey(userId, resourceId);
+        cache.invalidate(key);
+        recentGrants.invalidate(key);
+    }
+
+    public void invalidateUser(String userId) {
+        generation.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.userId().equals(userId));
+        recentGrants.asMap().keySet().removeIf(key -> key.userId().equals(userId));
+    }
+
+    public void invalidateResource(String resourceId) {
+        generation.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.resourceId().equals(resourceId));
+        recentGrants.asMap().keySet().removeIf(key -> key.resourceId().equals(resourceId));
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        recentGrants.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private static int estimateBytes(AccessKey key) {
+        return ENTRY_OVERHEAD_BYTES + 2 * (key.userId().length() + key.resourceId().length());
+    }
+
+    private Duration ttlFor(AccessDecision decision) {
+        return decision.granted() ? grantTtl : denyTtl;
+    }
+
+    private class DecisionExpiry implements Expiry<AccessKey, AccessDecision> {
+
+        @Override
+        public long expireAfterCreate(AccessKey key, AccessDecision decision, long currentTime) {
+            return ttlFor(decision).plus(staleWindow).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(AccessKey key, AccessDecision decision, long currentTime, long currentDuration) {
+            return ttlFor(decision).plus(staleWindow).toNanos();
+        }
+
+        @Override
+        public long expireAfterRead(AccessKey key, AccessDecision decision, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    record AccessKey(String userId, String resourceId) {
+    }
+
+    record AccessDecision(boolean granted, long decidedAtMillis) {
+
+        long ageMillis() {
+            return System.currentTimeMillis() - decidedAtMillis;
+        }
+    }
+}
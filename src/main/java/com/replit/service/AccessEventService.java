@@ -0,0 +1,230 @@
+
+package com.replit.service;
+
+import com.replit.dto.AccessEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Applies grant/revoke events pushed by the main app as targeted cache invalidations.
+ *
+ * <p>Events carry a monotonically increasing sequence number. Already applied sequences are
+ * ignored, so the main app can replay from {@link #getLastSequence()} after a reconnect
+ * without side effects. If a sequence is skipped the missing events may have been
+ * revocations, so the whole decision cache is dropped before continuing.
+ *
+ * <p>The cursor read has no body, so its signature covers a timestamp instead
+ * ({@link #isCursorRequestValid}); a captured signature stops working once the timestamp
+ * is older than {@code main-app.events.max-clock-skew}.
+ */
+@Service
+public class AccessEventService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessEventService.class);
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String CURSOR_PAYLOAD_PREFIX = "GET /api/internal/access-events/cursor\n";
+
+    private final AccessService accessService;
+    private final SecretKeySpec signingKey;
+    private final Duration maxClockSkew;
+    private final Clock clock;
+
+    // Written only inside apply(); 0 means nothing was received since startup
+    private final AtomicLong lastSequence = new AtomicLong(0);
+    // Serializes batches; not synchronized, so a waiting virtual thread does not pin its carrier
+    private final ReentrantLock applyLock = new ReentrantLock();
+
+    // Metrics
+    private final Counter grantEventCounter;
+    private final Counter revokeEventCounter;
+    private final Counter duplicateEventCounter;
+    private final Counter gapCounter;
+    private final Counter invalidSignatureCounter;
+    private final Counter staleRequestCounter;
+
+    @Autowired
+    public AccessEventService(AccessService accessService,
+                              @Value("${main-app.events.secret:}") String secret,
+                              @Value("${main-app.events.max-clock-skew:PT5M}") Duration maxClockSkew,
+                              MeterRegistry meterRegistry) {
+        this(accessService, secret, maxClockSkew, meterRegistry, Clock.systemUTC());
+    }
+
+    AccessEventService(AccessService accessService, String secret, Duration maxClockSkew,
+                       MeterRegistry meterRegistry, Clock clock) {
+        this.accessService = accessService;
+        this.signingKey = secret.isBlank()
+                ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.maxClockSkew = maxClockSkew;
+        this.clock = clock;
+
+        this.grantEventCounter = Counter.builder("access_events_received_total")
+                .description("Total number of access events applied")
+                .tag("type", "grant")
+                .register(meterRegistry);
+        this.revokeEventCounter = Counter.builder("access_events_received_total")
+                .description("Total number of access events applied")
+                .tag("type", "revoke")
+                .register(meterRegistry);
+        this.duplicateEventCounter = Counter.builder("access_events_duplicate_total")
+                .description("Total number of replayed access events that were already applied")
+                .register(meterRegistry);
+        this.gapCounter = Counter.builder("access_event_gaps_total")
+                .description("Total number of sequence gaps that forced a full cache invalidation")
+                .register(meterRegistry);
+        this.invalidSignatureCounter = Counter.builder("access_events_invalid_signature_total")
+                .description("Total number of access event pushes rejected for a bad signature")
+                .register(meterRegistry);
+        this.staleRequestCounter = Counter.builder("access_events_stale_requests_total")
+                .description("Total number of cursor reads rejected for a missing or stale timestamp")
+                .register(meterRegistry);
+        Gauge.builder("access_events_last_sequence", lastSequence, AtomicLong::get)
+                .description("Sequence number of the last applied access event")
+                .register(meterRegistry);
+
+        if (signingKey == null) {
+            logger.warn("main-app.events.secret is not set - access event push endpoint is disabled");
+        }
+    }
+
+    public boolean isEnabled() {
+        return signingKey != null;
+    }
+
+    /**
+     * Checks an {@code X-Signature: sha256=<hex>} header against an HMAC-SHA256 of the raw body.
+     */
+    public boolean isSignatureValid(byte[] body, String signature) {
+        if (signingKey == null || signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            invalidSignatureCounter.increment();
+            return false;
+        }
+        byte[] expected;
+        byte[] provided;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(signingKey);
+            expected = mac.doFinal(body);
+            provided = HexFormat.of().parseHex(signature.substring(SIGNATURE_PREFIX.length()));
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            invalidSignatureCounter.increment();
+            return false;
+        }
+        boolean valid = MessageDigest.isEqual(expected, provided);
+        if (!valid) {
+            invalidSignatureCounter.increment();
+        }
+        return valid;
+    }
+
+    /**
+     * Checks a cursor read: {@code X-Timestamp} holds epoch seconds within the allowed clock
+     * skew, and {@code X-Signature} is an HMAC-SHA256 of
+     * {@code "GET /api/internal/access-events/cursor\n" + timestamp}.
+     */
+    public boolean isCursorRequestValid(String timestamp, String signature) {
+        long epochSecond;
+        try {
+            epochSecond = Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            staleRequestCounter.increment();
+            return false;
+        }
+        if (Math.abs(clock.instant().getEpochSecond() - epochSecond) > maxClockSkew.toSeconds()) {
+            staleRequestCounter.increment();
+            return false;
+        }
+        return isSignatureValid((CURSOR_PAYLOAD_PREFIX + timestamp).getBytes(StandardCharsets.UTF_8), signature);
+    }
+
+    public long getLastSequence() {
+        return lastSequence.get();
+    }
+
+    public ApplyResult apply(List<AccessEvent> events) {
+        applyLock.lock();
+        try {
+            return applyInOrder(events);
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    private ApplyResult applyInOrder(List<AccessEvent> events) {
+        int applied = 0;
+        int duplicates = 0;
+        boolean gapDetected = false;
+
+        List<AccessEvent> ordered = new ArrayList<>(events);
+        ordered.sort(Comparator.comparingLong(AccessEvent::getSequence));
+        for (AccessEvent event : ordered) {
+            long last = lastSequence.get();
+            if (event.getSequence() <= last) {
+                duplicates++;
+                duplicateEventCounter.increment();
+                continue;
+            }
+            // Right after startup the cache is empty, so nothing before the first event matters
+            if (last != 0 && event.getSequence() != last + 1 && !gapDetected) {
+                gapDetected = true;
+                gapCounter.increment();
+                logger.warn("Access event sequence gap: expected {}, got {} - invalidating all cached decisions",
+                        last + 1, event.getSequence());
+                accessService.invalidateAllCachedDecisions();
+            }
+            invalidate(event);
+            lastSequence.set(event.getSequence());
+            applied++;
+        }
+
+        if (applied > 0) {
+            logger.debug("Applied {} access events, last sequence {}", applied, lastSequence.get());
+        }
+        return new ApplyResult(applied, duplicates, gapDetected, lastSequence.get());
+    }
+
+    // Grants also invalidate: a cached denial must not outlive the grant either
+    private void invalidate(AccessEvent event) {
+        String userId = event.getUserId();
+        String resourceId = event.getResourceId();
+        if (userId != null && resourceId != null) {
+            accessService.invalidateCachedDecision(userId, resourceId);
+        } else if (userId != null) {
+            accessService.invalidateCachedDecisionsForUser(userId);
+        } else if (resourceId != null) {
+            accessService.invalidateCachedDecisionsForResource(resourceId);
+        } else {
+            accessService.invalidateAllCachedDecisions();
+        }
+
+        if (event.getType() == AccessEvent.Type.REVOKE) {
+            revokeEventCounter.increment();
+        } else {
+            grantEventCounter.increment();
+        }
+    }
+
+    public record ApplyResult(int applied, int duplicates, boolean gapDetected, long lastSequence) {
+    }
+}
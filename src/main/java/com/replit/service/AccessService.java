@@ -1,45 +1,61 @@
 
 package com.replit.service;
 
+import com.replit.audit.AuditLog;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import jakarta.annotation.PostConstruct;
 import java.time.Duration;
-import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Service
 public class AccessService {
 
     private static final Logger logger = LoggerFactory.getLogger(AccessService.class);
-    private static final Logger auditLogger = LoggerFactory.getLogger("AUDIT");
 
-    @Value("${main-app.url:https://main-app.com}")
-    private String mainAppUrl;
-    
     @Value("${main-app.timeout:5000}")
     private int timeout;
-    
+
     @Value("${main-app.retry-attempts:3}")
     private int maxRetryAttempts;
 
-    private RestTemplate restTemplate;
-    private final RestTemplateBuilder restTemplateBuilder;
-    private final AtomicInteger failureCount = new AtomicInteger(0);
-    private static final int CIRCUIT_BREAKER_THRESHOLD = 5;
+    @Value("${main-app.retry-initial-backoff:PT0.2S}")
+    private Duration initialBackoff;
+
+    @Value("${main-app.retry-max-backoff:PT2S}")
+    private Duration maxBackoff;
+
+    @Value("${main-app.request-deadline:PT3S}")
+    private Duration defaultDeadline;
+
+    @Value("${access-cache.serve-stale-on-failure:true}")
+    private boolean serveStaleOnFailure;
+
+    private final MainAppClient mainAppClient;
+    private final AccessCheckBatcher batcher;
+    private final AccessDecisionCache decisionCache;
+    private final CircuitBreaker circuitBreaker;
+    private final AuditLog auditLog;
+    private final ConcurrentHashMap<AccessDecisionCache.AccessKey, CompletableFuture<Boolean>> inFlightChecks =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger coalescedWaiters = new AtomicInteger(0);
 
     // Metrics
     private final Counter accessRequestCounter;
@@ -47,9 +63,19 @@ public class AccessService {
     private final Counter accessDeniedCounter;
     private final Counter unauthorizedAccessCounter;
     private final Timer accessCheckTimer;
+    private final Counter coalescedCheckCounter;
+    private final Counter staleDecisionCounter;
+    private final Counter localDecisionCounter;
+    private final Counter rangeGrantReuseCounter;
 
-    public AccessService(RestTemplateBuilder builder, MeterRegistry meterRegistry) {
-        this.restTemplateBuilder = builder;
+    public AccessService(MainAppClient mainAppClient, AccessCheckBatcher batcher,
+                         AccessDecisionCache decisionCache, CircuitBreakerRegistry circuitBreakerRegistry,
+                         AuditLog auditLog, MeterRegistry meterRegistry) {
+        this.mainAppClient = mainAppClient;
+        this.batcher = batcher;
+        this.decisionCache = decisionCache;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("main-app");
+        this.auditLog = auditLog;
         this.accessRequestCounter = Counter.builder("access_requests_total")
                 .description("Total number of access requests")
                 .register(meterRegistry);
@@ -65,131 +91,325 @@ public class AccessService {
         this.accessCheckTimer = Timer.builder("access_check_duration")
                 .description("Time spent checking access permissions")
                 .register(meterRegistry);
+        this.coalescedCheckCounter = Counter.builder("access_check_coalesced_total")
+                .description("Total number of access checks that waited on an identical in-flight check")
+                .register(meterRegistry);
+        Gauge.builder("access_check_coalesced_waiters", coalescedWaiters, AtomicInteger::get)
+                .description("Number of callers currently waiting on an in-flight access check")
+                .register(meterRegistry);
+        Gauge.builder("access_check_in_flight", inFlightChecks, Map::size)
+                .description("Number of distinct access checks currently in flight")
+                .register(meterRegistry);
+        this.staleDecisionCounter = Counter.builder("access_stale_decisions_total")
+                .description("Total number of stale cached decisions served while the main app was unavailable")
+                .register(meterRegistry);
+        this.localDecisionCounter = Counter.builder("access_local_decisions_total")
+                .description("Total number of access decisions taken locally from token entitlements")
+                .register(meterRegistry);
+        this.rangeGrantReuseCounter = Counter.builder("access_range_grant_reuse_total")
+                .description("Total number of Range requests served on a recent grant without a new access check")
+                .register(meterRegistry);
+        registerCircuitBreakerMetrics(meterRegistry);
     }
 
-    @PostConstruct
-    private void initializeRestTemplate() {
-        this.restTemplate = restTemplateBuilder
-                .setConnectTimeout(Duration.ofMillis(timeout))
-                .setReadTimeout(Duration.ofMillis(timeout))
-                .build();
+    private void registerCircuitBreakerMetrics(MeterRegistry meterRegistry) {
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("access_circuit_breaker_state", circuitBreaker, cb -> cb.getState() == state ? 1 : 0)
+                    .description("1 if the main-app circuit breaker is in the given state")
+                    .tag("state", state.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("access_circuit_breaker_failure_rate", circuitBreaker, cb -> cb.getMetrics().getFailureRate())
+                .description("Failure rate of main-app calls in the sliding window (-1 until enough calls)")
+                .register(meterRegistry);
+        Gauge.builder("access_circuit_breaker_slow_call_rate", circuitBreaker, cb -> cb.getMetrics().getSlowCallRate())
+                .description("Slow-call rate of main-app calls in the sliding window (-1 until enough calls)")
+                .register(meterRegistry);
+        Counter notPermittedCounter = Counter.builder("access_circuit_breaker_not_permitted_total")
+                .description("Total number of main-app calls rejected by the circuit breaker")
+                .register(meterRegistry);
+
+        circuitBreaker.getEventPublisher()
+                .onStateTransition(event -> {
+                    CircuitBreaker.StateTransition transition = event.getStateTransition();
+                    logger.warn("Main-app circuit breaker transition: {} -> {}",
+                            transition.getFromState(), transition.getToState());
+                    Counter.builder("access_circuit_breaker_transitions_total")
+                            .description("Total number of main-app circuit breaker state transitions")
+                            .tag("from", transition.getFromState().name().toLowerCase())
+                            .tag("to", transition.getToState().name().toLowerCase())
+                            .register(meterRegistry)
+                            .increment();
+                })
+                .onCallNotPermitted(event -> notPermittedCounter.increment());
     }
 
     public boolean checkAccess(String userId, String resourceId) {
         return checkAccess(userId, resourceId, null);
     }
 
+    /**
+     * Blocking variant for callers that are not on the request path.
+     */
     public boolean checkAccess(String userId, String resourceId, String clientIp) {
+        return checkAccessAsync(userId, resourceId, clientIp).join();
+    }
+
+    public CompletableFuture<Boolean> checkAccessAsync(String userId, String resourceId, String clientIp) {
+        return checkAccessAsync(userId, resourceId, clientIp, defaultDeadline);
+    }
+
+    /**
+     * Non-blocking access check. Remote calls, retries and backoff never hold the calling
+     * thread; the whole check, retries included, must finish within {@code deadline}.
+     * The returned future always completes normally - any failure is a denial.
+     */
+    public CompletableFuture<Boolean> checkAccessAsync(String userId, String resourceId, String clientIp,
+                                                      Duration deadline) {
         accessRequestCounter.increment();
-        
-        // Setup MDC for structured logging
-        MDC.put("userId", userId);
-        MDC.put("resourceId", resourceId);
-        MDC.put("clientIp", clientIp != null ? clientIp : "unknown");
-        MDC.put("timestamp", LocalDateTime.now().toString());
+        Timer.Sample sample = Timer.start();
 
-        try {
-            Timer.Sample sample = Timer.start();
-            
-            // Circuit breaker check
-            if (failureCount.get() >= CIRCUIT_BREAKER_THRESHOLD) {
-                logger.warn("Circuit breaker is OPEN - denying access for user {} and resource {}", userId, resourceId);
-                auditLogger.warn("ACCESS_DENIED_CIRCUIT_BREAKER: user={}, resource={}, ip={}, reason=circuit_breaker_open", 
-                    userId, resourceId, clientIp);
-                accessDeniedCounter.increment();
-                return false;
+        // Read before the lookup: a grant removed by an invalidation after it must not be marked
+        long generation = decisionCache.generation();
+        Optional<Boolean> cached = decisionCache.get(userId, resourceId);
+        if (cached.isPresent()) {
+            sample.stop(accessCheckTimer);
+            if (cached.get()) {
+                decisionCache.markRecentGrant(userId, resourceId, generation);
             }
+            return CompletableFuture.completedFuture(recordDecision(userId, resourceId, clientIp, cached.get()));
+        }
 
-            boolean hasAccess = checkAccessWithRetry(userId, resourceId, 0);
+        // Circuit breaker check
+        CircuitBreaker.State state = circuitBreaker.getState();
+        if (state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN) {
             sample.stop(accessCheckTimer);
+            return CompletableFuture.completedFuture(
+                    fallbackDecision(userId, resourceId, clientIp, "circuit_breaker_open"));
+        }
 
-            // Audit logging
-            if (hasAccess) {
-                auditLogger.info("ACCESS_GRANTED: user={}, resource={}, ip={}, timestamp={}", 
-                    userId, resourceId, clientIp, LocalDateTime.now());
-                accessGrantedCounter.increment();
-            } else {
-                auditLogger.warn("ACCESS_DENIED: user={}, resource={}, ip={}, timestamp={}", 
-                    userId, resourceId, clientIp, LocalDateTime.now());
-                accessDeniedCounter.increment();
-            }
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        return fetchDecision(userId, resourceId, deadlineNanos)
+                .handle((decision, error) -> {
+                    sample.stop(accessCheckTimer);
+                    if (error == null && decision != null) {
+                        return recordDecision(userId, resourceId, clientIp, decision);
+                    }
+                    if (error != null) {
+                        logger.error("Access check for user {} and resource {} failed: {}",
+                                userId, resourceId, error.getMessage());
+                    }
+                    return fallbackDecision(userId, resourceId, clientIp, "main_app_unavailable");
+                });
+    }
 
-            return hasAccess;
-        } finally {
-            MDC.clear();
+    /**
+     * Records a decision taken without the main app (from the token's entitlement claim),
+     * so it is counted and audited like a remote one.
+     */
+    public boolean recordLocalDecision(String userId, String resourceId, String clientIp, boolean granted) {
+        accessRequestCounter.increment();
+        localDecisionCounter.increment();
+        if (granted) {
+            decisionCache.markRecentGrant(userId, resourceId, decisionCache.generation());
         }
+        return recordDecision(userId, resourceId, clientIp, granted);
     }
-    
-    private boolean checkAccessWithRetry(String userId, String resourceId, int attempt) {
-        try {
-            String url = mainAppUrl + "/api/internal/check-access?userId=" + userId + "&resourceId=" + resourceId;
-            ResponseEntity<Boolean> response = restTemplate.getForEntity(url, Boolean.class);
-            
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                boolean hasAccess = response.getBody();
-                logger.info("Access check for user {} and resource {}: {}", userId, resourceId, hasAccess);
-                
-                // Reset failure count on successful call
-                failureCount.set(0);
-                return hasAccess;
-            } else {
-                logger.warn("Invalid response from main app for user {} and resource {}", userId, resourceId);
-                return false;
-            }
-        } catch (Exception e) {
-            failureCount.incrementAndGet();
-            logger.error("Error checking access for user {} and resource {} (attempt {}): {}", 
-                    userId, resourceId, attempt + 1, e.getMessage());
-            
-            if (attempt < maxRetryAttempts - 1) {
-                try {
-                    Thread.sleep(1000 * (attempt + 1)); // Exponential backoff
-                    return checkAccessWithRetry(userId, resourceId, attempt + 1);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    return false;
-                }
+
+    /**
+     * True if access to the resource was granted to the user moments ago and not revoked
+     * since. Range requests continuing a stream use this instead of a full check; each
+     * reuse is audited.
+     */
+    public boolean hasRecentGrant(String userId, String resourceId, String clientIp) {
+        if (decisionCache.hasRecentGrant(userId, resourceId)) {
+            rangeGrantReuseCounter.increment();
+            auditLog.accessGrantReused(userId, resourceId, clientIp);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Used when the main app cannot give a decision: serves the last known decision if it is
+     * within the staleness window, otherwise denies. A stale grant is not remembered as a
+     * recent grant, so every request keeps going through this path until the app is back.
+     */
+    private boolean fallbackDecision(String userId, String resourceId, String clientIp, String reason) {
+        if (serveStaleOnFailure) {
+            Optional<Boolean> stale = decisionCache.getStale(userId, resourceId);
+            if (stale.isPresent()) {
+                staleDecisionCounter.increment();
+                logger.warn("Serving stale access decision for user {} and resource {} ({})", userId, resourceId, reason);
+                return recordDecision(userId, resourceId, clientIp, stale.get());
             }
-            return false;
         }
+
+        logger.warn("No access decision available ({}) - denying access for user {} and resource {}",
+                reason, userId, resourceId);
+        auditLog.accessDeniedUnavailable(userId, resourceId, clientIp, reason);
+        accessDeniedCounter.increment();
+        return false;
+    }
+
+    private boolean recordDecision(String userId, String resourceId, String clientIp, boolean hasAccess) {
+        // Audit logging
+        if (hasAccess) {
+            auditLog.accessGranted(userId, resourceId, clientIp);
+            accessGrantedCounter.increment();
+        } else {
+            auditLog.accessDenied(userId, resourceId, clientIp);
+            accessDeniedCounter.increment();
+        }
+        return hasAccess;
+    }
+
+    /**
+     * Asks the main app for a decision, coalescing concurrent checks for the same
+     * (userId, resourceId) so only the first caller goes remote and the rest wait on it.
+     */
+    private CompletableFuture<Boolean> fetchDecision(String userId, String resourceId, long deadlineNanos) {
+        AccessDecisionCache.AccessKey key = new AccessDecisionCache.AccessKey(userId, resourceId);
+        CompletableFuture<Boolean> pending = new CompletableFuture<>();
+        CompletableFuture<Boolean> inFlight = inFlightChecks.putIfAbsent(key, pending);
+
+        if (inFlight != null) {
+            coalescedCheckCounter.increment();
+            coalescedWaiters.incrementAndGet();
+            return inFlight.whenComplete((decision, error) -> coalescedWaiters.decrementAndGet());
+        }
+
+        long generation = decisionCache.generation();
+        checkAccessWithRetry(userId, resourceId, 0, deadlineNanos)
+                .whenComplete((decision, error) -> {
+                    // Only cache real answers from the main app, never failures.
+                    // Cache before releasing the key so late arrivals hit the cache.
+                    if (error == null && decision != null) {
+                        decisionCache.putIfCurrent(userId, resourceId, decision, generation);
+                        if (decision) {
+                            decisionCache.markRecentGrant(userId, resourceId, generation);
+                        }
+                    }
+                    inFlightChecks.remove(key, pending);
+                    if (error != null) {
+                        pending.completeExceptionally(error);
+                    } else {
+                        pending.complete(decision);
+                    }
+                });
+        return pending;
     }
-    
+
+    /**
+     * Completes with the main app's decision, or {@code null} when no decision could be obtained.
+     * Backoff between attempts is scheduled on a timer instead of sleeping on a thread.
+     */
+    private CompletableFuture<Boolean> checkAccessWithRetry(String userId, String resourceId, int attempt,
+                                                            long deadlineNanos) {
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            return CompletableFuture.failedFuture(new TimeoutException("Access check deadline exceeded"));
+        }
+        // Every attempt, retries included, needs a permit; in HALF_OPEN only a few probes get one
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(CallNotPermittedException.createCallNotPermittedException(circuitBreaker));
+        }
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<Boolean> call = batcher.isEnabled()
+                ? batcher.submit(userId, resourceId)
+                : mainAppClient.checkAccess(userId, resourceId);
+
+        return call
+                .orTimeout(Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(timeout)), TimeUnit.NANOSECONDS)
+                .handle((decision, error) -> {
+                    long elapsedNanos = System.nanoTime() - startNanos;
+                    if (error == null) {
+                        circuitBreaker.onSuccess(elapsedNanos, TimeUnit.NANOSECONDS);
+                        if (decision == null) {
+                            logger.warn("Invalid response from main app for user {} and resource {}", userId, resourceId);
+                        } else {
+                            logger.debug("Access check for user {} and resource {}: {}", userId, resourceId, decision);
+                        }
+                        return CompletableFuture.completedFuture(decision);
+                    }
+
+                    circuitBreaker.onError(elapsedNanos, TimeUnit.NANOSECONDS, error);
+                    logger.error("Error checking access for user {} and resource {} (attempt {}): {}",
+                            userId, resourceId, attempt + 1, error.getMessage());
+
+                    long backoffNanos = backoffWithJitter(attempt);
+                    if (attempt < maxRetryAttempts - 1 && System.nanoTime() + backoffNanos < deadlineNanos) {
+                        return CompletableFuture
+                                .runAsync(() -> { }, CompletableFuture.delayedExecutor(backoffNanos, TimeUnit.NANOSECONDS))
+                                .thenCompose(ignored -> checkAccessWithRetry(userId, resourceId, attempt + 1, deadlineNanos));
+                    }
+                    return CompletableFuture.<Boolean>completedFuture(null);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    // Exponential backoff with "equal jitter": half of the delay is fixed, half random
+    private long backoffWithJitter(int attempt) {
+        long base = Math.min(maxBackoff.toNanos(), initialBackoff.toNanos() << Math.min(attempt, 20));
+        long half = base / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
     public int getFailureCount() {
-        return failureCount.get();
+        return circuitBreaker.getMetrics().getNumberOfFailedCalls();
     }
-    
+
+    public String getCircuitBreakerState() {
+        return circuitBreaker.getState().name();
+    }
+
     public void resetCircuitBreaker() {
-        failureCount.set(0);
+        circuitBreaker.reset();
         logger.info("Circuit breaker reset");
     }
 
-    @Async
-    public CompletableFuture<Boolean> checkAccessAsync(String userId, String resourceId, String clientIp) {
-        return CompletableFuture.completedFuture(checkAccess(userId, resourceId, clientIp));
+    /**
+     * Invalidations also detach matching in-flight checks, so callers arriving afterwards
+     * ask the main app again instead of joining an answer fetched before the invalidation.
+     */
+    public void invalidateCachedDecision(String userId, String resourceId) {
+        decisionCache.invalidate(userId, resourceId);
+        inFlightChecks.remove(new AccessDecisionCache.AccessKey(userId, resourceId));
+    }
+
+    public void invalidateCachedDecisionsForUser(String userId) {
+        decisionCache.invalidateUser(userId);
+        inFlightChecks.keySet().removeIf(key -> key.userId().equals(userId));
+    }
+
+    public void invalidateCachedDecisionsForResource(String resourceId) {
+        decisionCache.invalidateResource(resourceId);
+        inFlightChecks.keySet().removeIf(key -> key.resourceId().equals(resourceId));
+    }
+
+    public void invalidateAllCachedDecisions() {
+        decisionCache.invalidateAll();
+        inFlightChecks.clear();
+    }
+
+    public long getCachedDecisionCount() {
+        return decisionCache.size();
     }
 
     public void logUnauthorizedAccess(String resourceId, String clientIp, String reason) {
         unauthorizedAccessCounter.increment();
-        MDC.put("resourceId", resourceId);
-        MDC.put("clientIp", clientIp != null ? clientIp : "unknown");
-        MDC.put("reason", reason);
-        MDC.put("timestamp", LocalDateTime.now().toString());
-        
-        try {
-            auditLogger.warn("UNAUTHORIZED_ACCESS_ATTEMPT: resource={}, ip={}, reason={}, timestamp={}", 
-                resourceId, clientIp, reason, LocalDateTime.now());
-            logger.warn("Unauthorized access attempt to resource {} from IP {} - reason: {}", 
-                resourceId, clientIp, reason);
-        } finally {
-            MDC.clear();
-        }
+        auditLog.unauthorizedAccess(resourceId, clientIp, reason);
+        logger.debug("Unauthorized access attempt to resource {} from IP {} - reason: {}",
+            resourceId, clientIp, reason);
     }
 
     public boolean isHealthy() {
         try {
-            String healthUrl = mainAppUrl + "/health";
-            ResponseEntity<String> response = restTemplate.getForEntity(healthUrl, String.class);
-            return response.getStatusCode() == HttpStatus.OK;
+            return mainAppClient.isHealthy().get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
             logger.warn("Health check failed for main application: {}", e.getMessage());
             return false;
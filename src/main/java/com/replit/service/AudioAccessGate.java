@@ -0,0 +1,170 @@
+
+package com.replit.service;
+
+import com.replit.ratelimit.KeyedRateLimiter;
+import com.replit.security.JwtPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The audio access pipeline shared by the servlet and reactive runtimes: resource id
+ * validation, rate limiting, reuse of a recent grant and local entitlements. Whatever
+ * cannot be decided here is left to the main app, which each runtime calls in its own
+ * non-blocking style before building the response with {@link #respond}.
+ */
+@Service
+public class AudioAccessGate {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioAccessGate.class);
+
+    private final AccessService accessService;
+    private final KeyedRateLimiter rateLimiter;
+
+    @Value("${jwt.entitlements.enabled:false}")
+    private boolean entitlementsEnabled;
+
+    // Local grants are only trusted from recently issued tokens, which bounds how long
+    // a revocation can be ignored; local denials are always honoured
+    @Value("${jwt.entitlements.max-grant-age:PT15M}")
+    private Duration maxGrantAge;
+
+    public AudioAccessGate(AccessService accessService, KeyedRateLimiter rateLimiter) {
+        this.accessService = accessService;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * How far {@link #admit} got with a request.
+     */
+    public enum Decision {
+        /** Answered with {@link Admission#rejection()} (invalid id or rate limited). */
+        REJECTED,
+        /** Continues a stream granted moments ago; build the response without a new check. */
+        RECENT_GRANT,
+        /** Decided from the token's entitlements, see {@link Admission#hasAccess()}. */
+        LOCAL,
+        /** The main app has to decide. */
+        REMOTE
+    }
+
+    public record Admission(Decision decision, boolean hasAccess, ResponseEntity<?> rejection) {
+
+        static Admission rejected(ResponseEntity<?> rejection) {
+            return new Admission(Decision.REJECTED, false, rejection);
+        }
+
+        static Admission of(Decision decision, boolean hasAccess) {
+            return new Admission(decision, hasAccess, null);
+        }
+    }
+
+    /**
+     * Runs every step that needs no call to the main app. Requests continuing a stream are
+     * rate limited like any other, but skip the access check while a recent grant exists.
+     */
+    public Admission admit(String resourceId, Authentication authentication, String clientIp,
+                           boolean continuesStream) {
+        String userId = authentication.getName();
+
+        // Validate resource ID format
+        if (!isValidResourceId(resourceId)) {
+            accessService.logUnauthorizedAccess(resourceId, clientIp, "invalid_resource_format");
+            return Admission.rejected(ResponseEntity.badRequest().build());
+        }
+
+        // Per-principal (by role tier) and per-IP limits instead of one global limiter
+        String role = authentication.getPrincipal() instanceof JwtPrincipal principal ? principal.role() : null;
+        long waitNanos = rateLimiter.tryAcquire(userId, role, clientIp);
+        if (waitNanos > 0) {
+            return Admission.rejected(rateLimited(resourceId, clientIp, waitNanos));
+        }
+
+        if (continuesStream && accessService.hasRecentGrant(userId, resourceId, clientIp)) {
+            return Admission.of(Decision.RECENT_GRANT, true);
+        }
+
+        Optional<Boolean> localDecision = evaluateEntitlements(authentication, resourceId);
+        if (localDecision.isPresent()) {
+            boolean hasAccess = accessService.recordLocalDecision(userId, resourceId, clientIp, localDecision.get());
+            return Admission.of(Decision.LOCAL, hasAccess);
+        }
+        return Admission.of(Decision.REMOTE, false);
+    }
+
+    /**
+     * Builds the response once access is decided: 403, or whatever {@code granted} returns.
+     */
+    public CompletableFuture<ResponseEntity<?>> respond(String resourceId, String userId, boolean hasAccess,
+                                                        Supplier<CompletableFuture<ResponseEntity<?>>> granted) {
+        if (!hasAccess) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(null));
+        }
+
+        logger.info("Streaming audio file: {} for user: {}", resourceId, userId);
+        return granted.get();
+    }
+
+    /**
+     * Maps a failure to build the response: 503 when the response executor is saturated
+     * (the client may retry shortly), 500 otherwise.
+     */
+    public ResponseEntity<?> failed(String resourceId, String userId, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            logger.warn("Response executor saturated - rejecting audio request {} for user {}", resourceId, userId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+        logger.error("Error streaming audio file {} for user {}: {}", resourceId, userId, cause.getMessage());
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+
+    private Optional<Boolean> evaluateEntitlements(Authentication authentication, String resourceId) {
+        if (!entitlementsEnabled
+                || !(authentication.getPrincipal() instanceof JwtPrincipal principal)
+                || principal.entitlements() == null) {
+            return Optional.empty();
+        }
+        return principal.entitlements().evaluate(resourceId, maxGrantAge, System.currentTimeMillis());
+    }
+
+    private ResponseEntity<Map<String, String>> rateLimited(String resourceId, String clientIp, long waitNanos) {
+        accessService.logUnauthorizedAccess(resourceId, clientIp, "rate_limit_exceeded");
+
+        // Seconds until the bucket refills enough for this request, rounded up
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Rate limit exceeded");
+        error.put("message", "Too many requests. Please try again later.");
+        error.put("retry_after", String.valueOf(retryAfterSeconds));
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(error);
+    }
+
+    public static boolean isValidResourceId(String resourceId) {
+        return resourceId != null &&
+               resourceId.matches("^[a-zA-Z0-9_-]{1,50}$") &&
+               !resourceId.contains("..");
+    }
+}
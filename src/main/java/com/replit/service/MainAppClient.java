@@ -0,0 +1,105 @@
+
+package com.replit.service;
+
+import com.replit.dto.AccessCheckBatchRequest;
+import com.replit.dto.AccessCheckBatchResponse;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking HTTP client for the main application's internal access API.
+ */
+@Component
+public class MainAppClient {
+
+    static final String CHECK_ACCESS_PATH = "/api/internal/check-access";
+    static final String CHECK_ACCESS_BATCH_PATH = "/api/internal/check-access/batch";
+
+    @Value("${main-app.url:https://main-app.com}")
+    private String mainAppUrl;
+
+    @Value("${main-app.timeout:5000}")
+    private int timeout;
+
+    @Value("${main-app.pool.http2-enabled:false}")
+    private boolean http2Enabled;
+
+    private WebClient webClient;
+    private final WebClient.Builder webClientBuilder;
+    private final ConnectionProvider connectionProvider;
+
+    public MainAppClient(WebClient.Builder webClientBuilder, ConnectionProvider mainAppConnectionProvider) {
+        this.webClientBuilder = webClientBuilder;
+        this.connectionProvider = mainAppConnectionProvider;
+    }
+
+    @PostConstruct
+    private void initializeWebClient() {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .keepAlive(true)
+                .protocol(protocols())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeout)
+                .responseTimeout(Duration.ofMillis(timeout));
+        this.webClient = webClientBuilder
+                .baseUrl(mainAppUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    // HTTP/2 is negotiated via ALPN over TLS, or spoken as prior-knowledge h2c over plain HTTP
+    private HttpProtocol[] protocols() {
+        if (!http2Enabled) {
+            return new HttpProtocol[]{HttpProtocol.HTTP11};
+        }
+        return mainAppUrl.startsWith("https")
+                ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                : new HttpProtocol[]{HttpProtocol.H2C};
+    }
+
+    /**
+     * Completes with the main app's decision, or {@code null} if it answered without one.
+     * Transport and HTTP errors complete the future exceptionally.
+     */
+    public CompletableFuture<Boolean> checkAccess(String userId, String resourceId) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path(CHECK_ACCESS_PATH)
+                        .queryParam("userId", "{userId}")
+                        .queryParam("resourceId", "{resourceId}")
+                        .build(userId, resourceId))
+                .retrieve()
+                .bodyToMono(Boolean.class)
+                .toFuture();
+    }
+
+    public CompletableFuture<AccessCheckBatchResponse> checkAccessBatch(AccessCheckBatchRequest request) {
+        return webClient.post()
+                .uri(CHECK_ACCESS_BATCH_PATH)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(AccessCheckBatchResponse.class)
+                .switchIfEmpty(Mono.error(
+                        new IllegalStateException("Empty batch response from main app")))
+                .toFuture();
+    }
+
+    public CompletableFuture<Boolean> isHealthy() {
+        return webClient.get()
+                .uri("/health")
+                .retrieve()
+                .toBodilessEntity()
+                .map(response -> response.getStatusCode().is2xxSuccessful())
+                .toFuture();
+    }
+}
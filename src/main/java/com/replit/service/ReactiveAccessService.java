@@ -0,0 +1,32 @@
+
+package com.replit.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link AccessService} for the reactive runtime. Decisions, caching, coalescing, the
+ * circuit breaker and audit stay in {@link AccessService}; this only exposes the
+ * non-blocking check as a {@link Mono}. A cached decision completes on the calling event
+ * loop without a thread hop.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAccessService {
+
+    private final AccessService accessService;
+
+    public ReactiveAccessService(AccessService accessService) {
+        this.accessService = accessService;
+    }
+
+    /**
+     * Emits the decision; like {@link AccessService#checkAccessAsync}, any failure is a
+     * denial. A client disconnecting does not cancel the check, which other requests may be
+     * coalesced onto.
+     */
+    public Mono<Boolean> checkAccess(String userId, String resourceId, String clientIp) {
+        return Mono.fromFuture(() -> accessService.checkAccessAsync(userId, resourceId, clientIp), true);
+    }
+}
@@ -0,0 +1,344 @@
+
+package com.replit.storage;
+
+import com.replit.audio.SegmentIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of remote objects on local disk ({@code storage.cache.*}).
+ * Keys must be usable as file names. Files are named after the object's key, version and
+ * fill, so a new version never collides with an old one still being sent. Concurrent misses for
+ * the same version share one fill (single-flight); when the byte budget is exceeded, least
+ * recently used files are deleted.
+ *
+ * <p>Entries are not carried across restarts: the directory is emptied at startup.
+ * Evicted and replaced files (with their HLS index) are only deleted after
+ * {@code storage.cache.eviction-grace}, so a response that looked a file up just before
+ * it was evicted can still open and index it; once open, sendfile and channels keep
+ * reading it after deletion. Until then the disk holds up to that many bytes more than
+ * the budget ({@code storage_cache_retired_bytes}).
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+public class DiskReadThroughCache {
+
+    /**
+     * Writes an object's content to the given (new, empty) file. The future completes once
+     * everything is written; no thread needs to wait for it.
+     */
+    @FunctionalInterface
+    public interface Filler {
+        CompletableFuture<Void> fill(Path target);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskReadThroughCache.class);
+
+    private final Path directory;
+    private final long maxBytes;
+    // Guards entries and retired; a ReentrantLock so virtual threads never pin while waiting
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access-ordered: iteration starts at the least recently used entry. Guarded by "lock".
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long residentBytes;
+    // Evicted files waiting for their deletion time, oldest first. Guarded by "lock".
+    private final ArrayDeque<Retired> retired = new ArrayDeque<>();
+    private long retiredBytes;
+    private final long evictionGraceNanos;
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> fills = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter coalescedCounter;
+    private final Counter evictionCounter;
+
+    private record Entry(String version, Path path, long size) {
+    }
+
+    private record Retired(Path path, long size, long deleteAfterNanos) {
+    }
+
+    public DiskReadThroughCache(
+            @Value("${storage.cache.directory:storage-cache}") String directory,
+            @Value("${storage.cache.max-bytes:10GB}") DataSize maxBytes,
+            @Value("${storage.cache.eviction-grace:PT5M}") Duration evictionGrace,
+            MeterRegistry meterRegistry) throws IOException {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes.toBytes();
+        this.evictionGraceNanos = evictionGrace.toNanos();
+        Files.createDirectories(this.directory);
+        int removed = clear();
+
+        this.hitCounter = Counter.builder("storage_cache_hits_total")
+                .description("Total number of object reads served from the local disk cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("storage_cache_misses_total")
+                .description("Total number of object reads that fetched the object from the store")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("storage_cache_coalesced_total")
+                .description("Total number of object reads that waited on an identical in-flight fill")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("storage_cache_evictions_total")
+                .description("Total number of cached objects deleted to stay within the byte budget")
+                .register(meterRegistry);
+        Gauge.builder("storage_cache_resident_bytes", this, DiskReadThroughCache::residentBytes)
+                .description("Bytes of objects currently held in the local disk cache")
+                .register(meterRegistry);
+        Gauge.builder("storage_cache_entries", this, DiskReadThroughCache::entryCount)
+                .description("Number of objects currently held in the local disk cache")
+                .register(meterRegistry);
+        Gauge.builder("storage_cache_retired_bytes", this, DiskReadThroughCache::retiredBytes)
+                .description("Bytes of evicted objects still on disk, waiting for the eviction grace to pass")
+                .register(meterRegistry);
+
+        logger.info("Disk read-through cache: directory={}, maxBytes={}, evictionGrace={}, removed {} stale files",
+                this.directory, maxBytes, evictionGrace, removed);
+    }
+
+    /**
+     * Completes with the local file holding {@code version} of {@code key}, filling it with
+     * {@code filler} first if it is not cached; a cached file gives an already completed
+     * future. Only one caller fills a given version; the others share its result.
+     */
+    public CompletableFuture<Path> get(String key, String version, long size, Filler filler) {
+        deleteRetired();
+        Path cached = lookup(key, version);
+        if (cached != null) {
+            hitCounter.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        String fillKey = key + '\n' + version;
+        CompletableFuture<Path> pending = new CompletableFuture<>();
+        CompletableFuture<Path> inFlight = fills.putIfAbsent(fillKey, pending);
+        if (inFlight != null) {
+            coalescedCounter.increment();
+            return inFlight.thenApply(Function.identity());
+        }
+
+        // A fill may have completed between the lookup and winning the slot
+        Path path = lookup(key, version);
+        if (path != null) {
+            fills.remove(fillKey, pending);
+            pending.complete(path);
+            return pending;
+        }
+
+        missCounter.increment();
+        fill(key, version, size, filler).whenComplete((filled, error) -> {
+            fills.remove(fillKey, pending);
+            if (error != null) {
+                pending.completeExceptionally(error);
+            } else {
+                pending.complete(filled);
+            }
+        });
+        return pending.thenApply(Function.identity());
+    }
+
+    private Path lookup(String key, String version) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            return entry != null && entry.version().equals(version) ? entry.path() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CompletableFuture<Path> fill(String key, String version, long size, Filler filler) {
+        String versionId = UUID.nameUUIDFromBytes(version.getBytes(StandardCharsets.UTF_8)).toString();
+        // Every fill gets its own name: a version fetched again after its eviction must not
+        // take over the name of the retired file, which is about to be deleted
+        String fillId = UUID.randomUUID().toString();
+        Path target = directory.resolve(key + "-" + versionId + "-" + fillId + ".mp3");
+        Path partial = directory.resolve(key + ".part-" + fillId);
+        CompletableFuture<Void> written;
+        try {
+            written = filler.fill(partial);
+        } catch (RuntimeException e) {
+            written = CompletableFuture.failedFuture(e);
+        }
+        return written.handle((ignored, error) -> {
+            try {
+                if (error != null) {
+                    throw new IOException("Cannot fill " + key + ": " + unwrap(error).getMessage(), unwrap(error));
+                }
+                commit(key, partial, target, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                deleteQuietly(partial);
+            }
+
+            retire(insert(key, new Entry(version, target, size)));
+            return target;
+        });
+    }
+
+    private static void commit(String key, Path partial, Path target, long size) throws IOException {
+        long written = Files.size(partial);
+        if (written != size) {
+            throw new IOException("Fetched " + written + " bytes of " + key + ", expected " + size);
+        }
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Returns the replaced and evicted entries, whose files the caller retires
+    private List<Entry> insert(String key, Entry entry) {
+        lock.lock();
+        try {
+            List<Entry> removed = new ArrayList<>();
+            Entry previous = entries.put(key, entry);
+            residentBytes += entry.size();
+            if (previous != null) {
+                residentBytes -= previous.size();
+                if (!previous.path().equals(entry.path())) {
+                    removed.add(previous);
+                }
+            }
+
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (residentBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> candidate = eldest.next();
+                if (candidate.getKey().equals(key)) {
+                    continue;
+                }
+                eldest.remove();
+                residentBytes -= candidate.getValue().size();
+                removed.add(candidate.getValue());
+                evictionCounter.increment();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void retire(List<Entry> removed) {
+        lock.lock();
+        try {
+            long deleteAfter = System.nanoTime() + evictionGraceNanos;
+            for (Entry entry : removed) {
+                retired.addLast(new Retired(entry.path(), entry.size(), deleteAfter));
+                retiredBytes += entry.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes the files whose grace has passed; they are deleted outside the lock
+    private List<Retired> takeExpired(long now) {
+        lock.lock();
+        try {
+            List<Retired> expired = new ArrayList<>();
+            while (!retired.isEmpty() && now - retired.peekFirst().deleteAfterNanos() >= 0) {
+                Retired file = retired.pollFirst();
+                retiredBytes -= file.size();
+                expired.add(file);
+            }
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleteRetired() {
+        for (Retired file : takeExpired(System.nanoTime())) {
+            delete(file.path());
+        }
+    }
+
+    // The HLS segment index persisted next to an object goes with it
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(SegmentIndex.pathFor(path));
+        } catch (IOException e) {
+            logger.warn("Cannot delete cached object {}: {}", path, e.getMessage());
+        }
+    }
+
+    private int clear() throws IOException {
+        int removed = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    Files.delete(file);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Cannot delete partial object {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private long residentBytes() {
+        lock.lock();
+        try {
+            return residentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long retiredBytes() {
+        lock.lock();
+        try {
+            return retiredBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int entryCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
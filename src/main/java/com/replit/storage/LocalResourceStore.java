@@ -0,0 +1,62 @@
+
+package com.replit.storage;
+
+import com.replit.audio.AudioCatalog;
+import com.replit.audio.FileMetadataCache;
+import com.replit.audio.FileMetadataCache.FileMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resources as {@code <id>.mp3} files in {@code audio.directory}. They are resolved through
+ * the {@link AudioCatalog} once it is ready, otherwise on disk via the {@link FileMetadataCache}.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalResourceStore implements ResourceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalResourceStore.class);
+
+    @Value("${audio.directory:audio-files}")
+    private String audioDirectory;
+
+    private final AudioCatalog catalog;
+    private final FileMetadataCache metadataCache;
+
+    public LocalResourceStore(AudioCatalog catalog, FileMetadataCache metadataCache) {
+        this.catalog = catalog;
+        this.metadataCache = metadataCache;
+    }
+
+    @Override
+    public CompletableFuture<StoredObject> open(String resourceId) {
+        return CompletableFuture.completedFuture(resolve(resourceId));
+    }
+
+    private StoredObject resolve(String resourceId) {
+        if (catalog.isReady()) {
+            // Resolved in memory; an unknown id is answered without touching the disk
+            AudioCatalog.CatalogEntry entry = catalog.lookup(resourceId);
+            if (entry == null) {
+                logger.warn("Audio file not in catalog: {}", resourceId);
+                return null;
+            }
+            return new StoredObject(entry.path(), entry.metadata());
+        }
+
+        Path audioFilePath = Paths.get(audioDirectory, resourceId + ".mp3");
+        FileMetadata metadata = metadataCache.get(audioFilePath);
+        if (!metadata.exists()) {
+            logger.warn("Audio file not found: {}", audioFilePath);
+            return null;
+        }
+        return new StoredObject(audioFilePath, metadata);
+    }
+}
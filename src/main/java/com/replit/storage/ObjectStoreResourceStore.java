@@ -0,0 +1,160 @@
+
+package com.replit.storage;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.replit.audio.FileMetadataCache.FileMetadata;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resources as objects {@code <key-prefix><id>.mp3} in an S3-compatible bucket, read through
+ * the {@link DiskReadThroughCache}. Nodes need no copy of the catalog: an object is fetched
+ * on its first request, with objects above {@code part-size} split into ranged GETs run
+ * {@code fetch-parallelism} at a time and written straight to their offsets.
+ *
+ * <p>Object metadata ({@code HEAD}, including "missing") is cached for
+ * {@code storage.s3.metadata-ttl}. Validators come from the object's size and Last-Modified,
+ * so every replica sends the same ETag.
+ *
+ * <p>Nothing here blocks: the HEAD and the ranged GETs run on the client's event loop and
+ * complete the returned future, so a slow or stalled store holds no request or executor
+ * thread. Cached objects with cached metadata give an already completed future.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+public class ObjectStoreResourceStore implements ResourceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObjectStoreResourceStore.class);
+
+    private final S3ObjectClient client;
+    private final DiskReadThroughCache diskCache;
+    private final String keyPrefix;
+    private final long partSize;
+    private final int fetchParallelism;
+    private final Duration fetchTimeout;
+    private final Duration timeout;
+    private final AsyncCache<String, Optional<S3ObjectClient.ObjectInfo>> objectInfos;
+
+    // Metrics
+    private final Counter fetchedBytesCounter;
+    private final Timer fetchTimer;
+
+    public ObjectStoreResourceStore(
+            S3ObjectClient client,
+            DiskReadThroughCache diskCache,
+            @Value("${storage.s3.key-prefix:}") String keyPrefix,
+            @Value("${storage.s3.part-size:8MB}") DataSize partSize,
+            @Value("${storage.s3.fetch-parallelism:4}") int fetchParallelism,
+            @Value("${storage.s3.fetch-timeout:PT60S}") Duration fetchTimeout,
+            @Value("${storage.s3.timeout:PT10S}") Duration timeout,
+            @Value("${storage.s3.metadata-ttl:PT30S}") Duration metadataTtl,
+            @Value("${storage.s3.metadata-max-entries:100000}") long metadataMaxEntries,
+            MeterRegistry meterRegistry) {
+        this.client = client;
+        this.diskCache = diskCache;
+        this.keyPrefix = keyPrefix;
+        this.partSize = Math.max(1, partSize.toBytes());
+        this.fetchParallelism = Math.max(1, fetchParallelism);
+        this.fetchTimeout = fetchTimeout;
+        this.timeout = timeout;
+        this.objectInfos = Caffeine.newBuilder()
+                .expireAfterWrite(metadataTtl)
+                .maximumSize(metadataMaxEntries)
+                .buildAsync();
+
+        this.fetchedBytesCounter = Counter.builder("storage_fetched_bytes_total")
+                .description("Total number of bytes fetched from the object store into the disk cache")
+                .register(meterRegistry);
+        this.fetchTimer = Timer.builder("storage_fetch_duration")
+                .description("Time spent fetching an object from the object store")
+                .register(meterRegistry);
+
+        logger.info("Object store resources: keyPrefix='{}', partSize={}, fetchParallelism={}, metadataTtl={}",
+                keyPrefix, partSize, this.fetchParallelism, metadataTtl);
+    }
+
+    @Override
+    public CompletableFuture<StoredObject> open(String resourceId) {
+        String key = keyPrefix + resourceId + ".mp3";
+        // Concurrent misses share one HEAD; a failed one is not cached
+        return objectInfos.get(key, (k, executor) -> head(k)).thenCompose(info -> {
+            if (info.isEmpty()) {
+                logger.warn("Audio object not found: {}", key);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            S3ObjectClient.ObjectInfo object = info.get();
+            FileMetadata metadata = FileMetadata.of(object.size(), object.lastModified());
+            // The store's ETag names the version; without one, size and Last-Modified do
+            String version = object.etag() != null ? object.etag() : metadata.etag();
+            return diskCache.get(resourceId, version, object.size(), target -> fetch(key, object.size(), target))
+                    .thenApply(path -> new StoredObject(path, metadata));
+        });
+    }
+
+    private CompletableFuture<Optional<S3ObjectClient.ObjectInfo>> head(String key) {
+        return client.head(key)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .timeout(timeout)
+                .onErrorMap(e -> new IOException("Cannot read metadata of " + key + ": " + e.getMessage(), e))
+                .toFuture();
+    }
+
+    private CompletableFuture<Void> fetch(String key, long size, Path target) {
+        long startedAt = System.nanoTime();
+        long parts = (size + partSize - 1) / partSize;
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return Flux.range(0, Math.toIntExact(parts))
+                .flatMap(part -> {
+                    long start = part * partSize;
+                    long end = Math.min(size, start + partSize) - 1;
+                    return DataBufferUtils.write(client.getRange(key, start, end, size), channel, start)
+                            .doOnNext(DataBufferUtils::release);
+                }, fetchParallelism)
+                .then()
+                .timeout(fetchTimeout)
+                .onErrorMap(e -> new IOException("Cannot fetch " + key + ": " + e.getMessage(), e))
+                .doOnSuccess(ignored -> {
+                    fetchedBytesCounter.increment(size);
+                    fetchTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                    logger.debug("Fetched {} ({} bytes, {} parts)", key, size, parts);
+                })
+                // Closed before the future completes, so the cache never moves an open file
+                .doOnTerminate(() -> closeQuietly(channel, target))
+                .doOnCancel(() -> closeQuietly(channel, target))
+                .toFuture();
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel, Path target) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close {}: {}", target, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+
+package com.replit.storage;
+
+import com.replit.audio.FileMetadataCache.FileMetadata;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where audio resources are stored ({@code storage.backend}). Every backend hands out a
+ * local, readable file, so sendfile, memory mapping, the hot-file cache and HLS indexing
+ * work the same whatever the backend is.
+ */
+public interface ResourceStore {
+
+    /**
+     * A stored resource: a local file with the resource's current content, and validators
+     * that are the same on every replica serving it.
+     */
+    record StoredObject(Path path, FileMetadata metadata) {
+    }
+
+    /**
+     * Opens a resource by its (already sanitized) id. Completes with null if the store has no
+     * such resource, exceptionally if the store cannot be read. Backends that need no I/O to
+     * answer return an already completed future; none blocks the calling thread.
+     */
+    CompletableFuture<StoredObject> open(String resourceId);
+}
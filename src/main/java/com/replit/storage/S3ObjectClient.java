@@ -0,0 +1,171 @@
+
+package com.replit.storage;
+
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal non-blocking client for an S3-compatible object store: {@code HEAD} for object
+ * metadata and ranged {@code GET}s for content. Requests are path-style
+ * ({@code <endpoint>/<bucket>/<key>}) and SigV4-signed when an access key is configured.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+public class S3ObjectClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3ObjectClient.class);
+
+    /**
+     * What a {@code HEAD} returns about an object.
+     */
+    public record ObjectInfo(long size, long lastModified, String etag) {
+    }
+
+    private final String endpoint;
+    private final String bucket;
+    private final AwsV4Signer signer;
+    private final ConnectionProvider connectionProvider;
+    private final WebClient webClient;
+
+    public S3ObjectClient(
+            @Value("${storage.s3.endpoint:}") String endpoint,
+            @Value("${storage.s3.bucket:}") String bucket,
+            @Value("${storage.s3.region:us-east-1}") String region,
+            @Value("${storage.s3.access-key:}") String accessKey,
+            @Value("${storage.s3.secret-key:}") String secretKey,
+            @Value("${storage.s3.timeout:PT10S}") Duration timeout,
+            @Value("${storage.s3.max-connections:64}") int maxConnections,
+            WebClient.Builder webClientBuilder) {
+        if (endpoint.isBlank() || bucket.isBlank()) {
+            throw new IllegalStateException("storage.backend=s3 requires storage.s3.endpoint and storage.s3.bucket");
+        }
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.bucket = bucket;
+        // Without credentials requests go out unsigned (public buckets, local stand-ins)
+        this.signer = accessKey.isBlank() ? null : new AwsV4Signer(accessKey, secretKey, region);
+
+        this.connectionProvider = ConnectionProvider.builder("object-store")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(timeout)
+                .metrics(true)
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) timeout.toMillis())
+                .responseTimeout(timeout);
+        this.webClient = webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+
+        logger.info("Object store: endpoint={}, bucket={}, region={}, signed={}",
+                this.endpoint, bucket, region, signer != null);
+    }
+
+    /**
+     * Emits the object's metadata, or completes empty if the object does not exist.
+     */
+    public Mono<ObjectInfo> head(String key) {
+        URI uri = objectUri(key);
+        return request(HttpMethod.HEAD, uri)
+                .exchangeToMono(response -> {
+                    if (response.statusCode().value() == HttpStatus.NOT_FOUND.value()) {
+                        return Mono.empty();
+                    }
+                    if (!response.statusCode().is2xxSuccessful()) {
+                        return response.createError();
+                    }
+                    HttpHeaders headers = response.headers().asHttpHeaders();
+                    if (headers.getContentLength() < 0) {
+                        return Mono.error(new IOException("No Content-Length in HEAD response for " + uri));
+                    }
+                    return Mono.just(new ObjectInfo(headers.getContentLength(), headers.getLastModified(), headers.getETag()));
+                });
+    }
+
+    /**
+     * Streams bytes {@code start} to {@code end} (inclusive) of the object. Fails unless the
+     * store answers with exactly that range ({@code Content-Range: bytes start-end/objectSize}
+     * and that many body bytes), so parts can be written at fixed offsets.
+     */
+    public Flux<DataBuffer> getRange(String key, long start, long end, long objectSize) {
+        URI uri = objectUri(key);
+        boolean wholeObject = start == 0 && end == objectSize - 1;
+        String expectedRange = "bytes " + start + "-" + end + "/" + objectSize;
+        return request(HttpMethod.GET, uri)
+                .header(HttpHeaders.RANGE, "bytes=" + start + "-" + end)
+                .exchangeToFlux(response -> {
+                    int status = response.statusCode().value();
+                    if (status == HttpStatus.PARTIAL_CONTENT.value()) {
+                        String contentRange = response.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_RANGE);
+                        if (contentRange == null || !contentRange.trim().equals(expectedRange)) {
+                            return response.releaseBody().thenMany(Flux.error(new IOException(
+                                    "Expected Content-Range '" + expectedRange + "' from " + uri + ", got '" + contentRange + "'")));
+                        }
+                        return exactly(response.bodyToFlux(DataBuffer.class), end - start + 1, uri);
+                    }
+                    if (status == HttpStatus.OK.value() && wholeObject) {
+                        return exactly(response.bodyToFlux(DataBuffer.class), objectSize, uri);
+                    }
+                    return response.<DataBuffer>createError().flux();
+                });
+    }
+
+    // Fails as soon as the body runs past the expected length, and at its end if it fell short
+    private static Flux<DataBuffer> exactly(Flux<DataBuffer> body, long expected, URI uri) {
+        AtomicLong received = new AtomicLong();
+        return body.<DataBuffer>handle((buffer, sink) -> {
+                    if (received.addAndGet(buffer.readableByteCount()) > expected) {
+                        DataBufferUtils.release(buffer);
+                        sink.error(new IOException("Received more than " + expected + " bytes from " + uri));
+                    } else {
+                        sink.next(buffer);
+                    }
+                })
+                .concatWith(Mono.defer(() -> received.get() == expected
+                        ? Mono.empty()
+                        : Mono.error(new IOException("Received " + received.get() + " of " + expected + " bytes from " + uri))));
+    }
+
+    private WebClient.RequestBodySpec request(HttpMethod method, URI uri) {
+        WebClient.RequestBodySpec spec = webClient.method(method).uri(uri);
+        if (signer != null) {
+            signer.sign(method.name(), uri, Instant.now()).forEach((name, value) -> spec.header(name, value));
+        }
+        return spec;
+    }
+
+    private URI objectUri(String key) {
+        StringBuilder path = new StringBuilder(endpoint).append('/').append(AwsV4Signer.encodeSegment(bucket));
+        for (String segment : key.split("/")) {
+            path.append('/').append(AwsV4Signer.encodeSegment(segment));
+        }
+        return URI.create(path.toString());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        connectionProvider.dispose();
+    }
+}
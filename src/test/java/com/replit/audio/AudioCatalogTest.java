@@ -0,0 +1,79 @@
+package com.replit.audio;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AudioCatalogTest {
+
+    @TempDir
+    Path root;
+
+    @TempDir
+    Path elsewhere;
+
+    private final AudioCatalog catalog = new AudioCatalog(new SimpleMeterRegistry());
+
+    @BeforeEach
+    void start() throws IOException, InterruptedException {
+        Files.createDirectories(root.resolve("ab/cd"));
+        Files.write(root.resolve("ab/podcast-1.mp3"), new byte[10]);
+        Files.write(root.resolve("ab/cd/podcast-2.mp3"), new byte[20]);
+        Files.write(root.resolve("podcast-3.mp3"), new byte[30]);
+
+        ReflectionTestUtils.setField(catalog, "audioDirectory", root.toString());
+        ReflectionTestUtils.setField(catalog, "enabled", true);
+        catalog.start();
+        await(catalog::isReady);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        catalog.stop();
+    }
+
+    @Test
+    void indexesFilesInShards() {
+        assertThat(catalog.lookup("podcast-1").size()).isEqualTo(10);
+        assertThat(catalog.lookup("podcast-2").path()).isEqualTo(root.resolve("ab/cd/podcast-2.mp3"));
+        assertThat(catalog.lookup("missing")).isNull();
+    }
+
+    @Test
+    void forgetsAShardThatIsMovedAway() throws InterruptedException, IOException {
+        Files.move(root.resolve("ab"), elsewhere.resolve("ab"));
+
+        await(() -> catalog.lookup("podcast-1") == null && catalog.lookup("podcast-2") == null);
+        assertThat(catalog.lookup("podcast-3")).isNotNull();
+    }
+
+    @Test
+    void picksUpAShardThatIsMovedBackIn() throws InterruptedException, IOException {
+        Files.move(root.resolve("ab"), elsewhere.resolve("ab"));
+        await(() -> catalog.lookup("podcast-1") == null);
+
+        Files.move(elsewhere.resolve("ab"), root.resolve("ef"));
+
+        await(() -> catalog.lookup("podcast-2") != null);
+        assertThat(catalog.lookup("podcast-2").path()).isEqualTo(root.resolve("ef/cd/podcast-2.mp3"));
+    }
+
+    // The watcher applies changes on its own thread
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition within 10 s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.replit.audio;
+
+import com.replit.audio.FileMetadataCache.FileMetadata;
+import com.replit.storage.ResourceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AudioStreamingServiceTest {
+
+    private static final int LENGTH = 1000;
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+    private static final FileMetadata METADATA = FileMetadata.of(LENGTH, LAST_MODIFIED);
+
+    @TempDir
+    Path directory;
+
+    private final ResourceStore resourceStore = mock(ResourceStore.class);
+    // Not stubbed: nothing is hot, so every body comes from the file
+    private final HotFileCache hotFileCache = mock(HotFileCache.class);
+    private final AudioStreamingService service = new AudioStreamingService(resourceStore, hotFileCache, Runnable::run);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path file = Files.write(directory.resolve("podcast-1.mp3"), new byte[LENGTH]);
+        when(resourceStore.open("podcast-1"))
+                .thenReturn(CompletableFuture.completedFuture(new ResourceStore.StoredObject(file, METADATA)));
+        ReflectionTestUtils.setField(service, "cacheControl", "private, no-cache");
+        zeroCopy(true);
+    }
+
+    private void zeroCopy(boolean enabled) {
+        ReflectionTestUtils.setField(service, "zeroCopyEnabled", enabled);
+        ReflectionTestUtils.setField(service, "zeroCopyMinSize", DataSize.ofBytes(1));
+    }
+
+    private ResponseEntity<?> get(HttpHeaders requestHeaders) {
+        return service.buildResponse("podcast-1", requestHeaders, false).join();
+    }
+
+    private static HttpHeaders range(String range) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, range);
+        return headers;
+    }
+
+    @Test
+    void servesASuffixRange() {
+        ResponseEntity<?> response = get(range("bytes=-100"));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(206);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 900-999/1000");
+        assertThat(response.getBody()).isEqualTo(new ZeroCopyFileRegion(directory.resolve("podcast-1.mp3"), 900, 100));
+    }
+
+    @Test
+    void servesAnOpenEndedRange() {
+        ResponseEntity<?> response = get(range("bytes=500-"));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(206);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 500-999/1000");
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(500);
+    }
+
+    @Test
+    void servesSingleRangesAsRegionsWithoutZeroCopy() {
+        zeroCopy(false);
+
+        ResponseEntity<?> response = get(range("bytes=-100"));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(206);
+        ResourceRegion region = (ResourceRegion) response.getBody();
+        assertThat(region.getPosition()).isEqualTo(900);
+        assertThat(region.getCount()).isEqualTo(100);
+    }
+
+    @Test
+    void servesOverlappingRangesAsSeparateParts() {
+        ResponseEntity<?> response = get(range("bytes=0-99,50-149"));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(206);
+        assertThat((List<?>) response.getBody())
+                .extracting(region -> ((ResourceRegion) region).getPosition())
+                .containsExactly(0L, 50L);
+    }
+
+    @Test
+    void rejectsOverlappingRangesThatAddUpToMoreThanTheFile() {
+        ResponseEntity<?> response = get(range("bytes=0-599,400-999"));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(416);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */1000");
+    }
+
+    @Test
+    void rejectsARangeBeyondTheEndOfTheFile() {
+        ResponseEntity<?> response = get(range("bytes=1000-"));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(416);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */1000");
+        assertThat(response.getBody()).isNull();
+    }
+
+    @Test
+    void servesTheWholeFileWhenIfRangeDoesNotMatch() {
+        zeroCopy(false);
+        HttpHeaders headers = range("bytes=0-99");
+        headers.set(HttpHeaders.IF_RANGE, "\"outdated\"");
+
+        ResponseEntity<?> response = get(headers);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(LENGTH);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isNull();
+        // Spring MVC would apply the Range header to any other Resource body
+        assertThat(response.getBody()).isInstanceOf(InputStreamResource.class);
+    }
+
+    @Test
+    void servesTheRangeWhenIfRangeMatches() {
+        HttpHeaders headers = range("bytes=0-99");
+        headers.set(HttpHeaders.IF_RANGE, METADATA.etag());
+
+        assertThat(get(headers).getStatusCode().value()).isEqualTo(206);
+    }
+
+    @Test
+    void answersNotModifiedForAnyTagOrAWeakMatch() {
+        HttpHeaders anyTag = new HttpHeaders();
+        anyTag.setIfNoneMatch("*");
+        HttpHeaders weak = new HttpHeaders();
+        weak.setIfNoneMatch("W/" + METADATA.etag());
+
+        ResponseEntity<?> response = get(anyTag);
+        assertThat(response.getStatusCode().value()).isEqualTo(304);
+        assertThat(response.getHeaders().getETag()).isEqualTo(METADATA.etag());
+        assertThat(response.getBody()).isNull();
+        assertThat(get(weak).getStatusCode().value()).isEqualTo(304);
+    }
+
+    @Test
+    void ignoresIfModifiedSinceWhenIfNoneMatchIsPresent() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfModifiedSince(LAST_MODIFIED + 60_000);
+        assertThat(get(headers).getStatusCode().value()).isEqualTo(304);
+
+        headers.setIfNoneMatch("\"outdated\"");
+        assertThat(get(headers).getStatusCode().value()).isEqualTo(200);
+    }
+}
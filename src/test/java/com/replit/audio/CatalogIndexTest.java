@@ -0,0 +1,81 @@
+package com.replit.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogIndexTest {
+
+    @Test
+    void findsUpdatesAndRemovesEntries() {
+        CatalogIndex index = new CatalogIndex(4);
+        index.put("podcast-1", "a", 100, 1, 11);
+        index.put("podcast-2", "b", 200, 2, 22);
+        index.put("podcast-1", "a", 150, 3, 33);
+
+        assertThat(index.get("podcast-1")).isEqualTo(new CatalogIndex.Entry("a", 150, 3, 33));
+        assertThat(index.get("podcast-2")).isEqualTo(new CatalogIndex.Entry("b", 200, 2, 22));
+        assertThat(index.get("podcast-3")).isNull();
+
+        // Only the shard the entry is indexed from can remove it
+        assertThat(index.remove("podcast-2", "a")).isFalse();
+        assertThat(index.remove("podcast-2", "b")).isTrue();
+        assertThat(index.get("podcast-2")).isNull();
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        CatalogIndex index = new CatalogIndex(0);
+        for (int i = 0; i < 10_000; i++) {
+            index.put("episode-" + i, "shard-" + (i % 7), i, i, i);
+        }
+
+        assertThat(index.size()).isEqualTo(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(index.get("episode-" + i)).isEqualTo(new CatalogIndex.Entry("shard-" + (i % 7), i, i, i));
+        }
+    }
+
+    @Test
+    void reclaimsTheIdsOfRemovedEntriesUnderChurn() {
+        CatalogIndex index = new CatalogIndex(100);
+        for (int i = 0; i < 100; i++) {
+            index.put("stable-" + i, "a", i, i, i);
+        }
+
+        // Files that keep appearing and disappearing reuse tombstone slots
+        for (int i = 0; i < 200_000; i++) {
+            index.put("temporary-" + i, "a", i, i, i);
+            assertThat(index.remove("temporary-" + i, "a")).isTrue();
+        }
+
+        assertThat(index.size()).isEqualTo(100);
+        assertThat(index.arenaBytes()).isLessThan(64 * 1024);
+        for (int i = 0; i < 100; i++) {
+            assertThat(index.get("stable-" + i)).isEqualTo(new CatalogIndex.Entry("a", i, i, i));
+        }
+    }
+
+    @Test
+    void removesEveryEntryUnderARemovedShard() {
+        String nested = "ab" + File.separator + "cd";
+        CatalogIndex index = new CatalogIndex(8);
+        index.put("podcast-1", "ab", 1, 1, 0);
+        index.put("podcast-2", nested, 2, 2, 0);
+        index.put("podcast-3", "abc", 3, 3, 0);
+        index.put("podcast-4", "", 4, 4, 0);
+
+        assertThat(index.removeShard("ab")).isEqualTo(2);
+
+        assertThat(index.get("podcast-1")).isNull();
+        assertThat(index.get("podcast-2")).isNull();
+        // A sibling sharing the name prefix and the root files stay
+        assertThat(index.get("podcast-3")).isNotNull();
+        assertThat(index.get("podcast-4")).isNotNull();
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.removeShard("zz")).isZero();
+    }
+}
@@ -0,0 +1,103 @@
+package com.replit.audio;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotFileCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final byte[] content = new byte[10_000];
+    private Path file;
+
+    @BeforeEach
+    void writeFile() throws IOException {
+        new Random(7).nextBytes(content);
+        file = Files.write(directory.resolve("episode.mp3"), content);
+    }
+
+    private HotFileCache cache(HotFileCache.BufferType bufferType) {
+        return new HotFileCache(true, DataSize.ofKilobytes(64), DataSize.ofKilobytes(32), 3,
+                Duration.ofMinutes(10), bufferType, meterRegistry);
+    }
+
+    private double residentBytes() {
+        return meterRegistry.get("audio_hot_cache_resident_bytes").gauge().value();
+    }
+
+    @Test
+    void loadsAFileOnceItHasBeenRequestedOftenEnough() throws IOException {
+        HotFileCache cache = cache(HotFileCache.BufferType.DIRECT);
+
+        assertThat(cache.lookup(file, content.length, 1)).isNull();
+        assertThat(cache.lookup(file, content.length, 1)).isNull();
+        ByteBufferResource loaded = cache.lookup(file, content.length, 1);
+
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getInputStream().readAllBytes()).isEqualTo(content);
+        assertThat(cache.lookup(file, content.length, 1)).isNotNull();
+        assertThat(meterRegistry.get("audio_hot_cache_hits_total").counter().count()).isEqualTo(1);
+        assertThat(residentBytes()).isEqualTo(content.length);
+    }
+
+    @Test
+    void mapsFilesWhenConfigured() throws IOException {
+        HotFileCache cache = cache(HotFileCache.BufferType.MAPPED);
+        for (int i = 0; i < 2; i++) {
+            cache.lookup(file, content.length, 1);
+        }
+
+        assertThat(cache.lookup(file, content.length, 1).getInputStream().readAllBytes()).isEqualTo(content);
+    }
+
+    @Test
+    void dropsACopyOnceTheFileChanges() {
+        HotFileCache cache = cache(HotFileCache.BufferType.DIRECT);
+        for (int i = 0; i < 3; i++) {
+            cache.lookup(file, content.length, 1);
+        }
+
+        assertThat(cache.lookup(file, content.length, 2)).isNull();
+        assertThat(residentBytes()).isZero();
+        assertThat(meterRegistry.get("audio_hot_cache_invalidations_total").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void servesLargeFilesFromDisk() throws IOException {
+        HotFileCache cache = cache(HotFileCache.BufferType.DIRECT);
+        Path large = Files.write(directory.resolve("large.mp3"), new byte[40_000]);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.lookup(large, 40_000, 1)).isNull();
+        }
+        assertThat(residentBytes()).isZero();
+    }
+
+    @Test
+    void startsCountingAgainWhenALoadFails() {
+        HotFileCache cache = cache(HotFileCache.BufferType.DIRECT);
+        // Claims more bytes than the file has, so the load hits end of file
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.lookup(file, content.length + 1, 1)).isNull();
+        }
+        assertThat(residentBytes()).isZero();
+
+        assertThat(cache.lookup(file, content.length, 1)).isNull();
+        assertThat(cache.lookup(file, content.length, 1)).isNull();
+        assertThat(cache.lookup(file, content.length, 1)).isNotNull();
+    }
+}
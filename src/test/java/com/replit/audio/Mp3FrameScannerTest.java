@@ -0,0 +1,169 @@
+package com.replit.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Mp3FrameScannerTest {
+
+    // MPEG1 Layer III, 44.1 kHz: 128 kbit/s (417 bytes), padded (418), 320 kbit/s (1044)
+    private static final int MPEG1_128K = 0xFFFB9000;
+    private static final int MPEG1_128K_PADDED = 0xFFFB9200;
+    private static final int MPEG1_320K = 0xFFFBE000;
+    // MPEG2 Layer III, 22.05 kHz, 64 kbit/s: 576 samples in 208 bytes
+    private static final int MPEG2_64K = 0xFFF38000;
+    // MPEG2.5 Layer III, 8 kHz, 8 kbit/s: 72 bytes
+    private static final int MPEG25_8K = 0xFFE31800;
+    // MPEG1 Layer I, 32 kHz, 32 kbit/s: 48 bytes
+    private static final int MPEG1_LAYER1_32K = 0xFFFF1800;
+
+    // One MPEG1 Layer III frame: 1152 samples at 44.1 kHz
+    private static final double FRAME_MICROS = 1152 * 1_000_000.0 / 44100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void computesFrameLengthsForEveryVersionAndLayer() {
+        assertThat(Mp3FrameScanner.frameLength(MPEG1_128K)).isEqualTo(417);
+        assertThat(Mp3FrameScanner.frameLength(MPEG1_128K_PADDED)).isEqualTo(418);
+        assertThat(Mp3FrameScanner.frameLength(MPEG1_320K)).isEqualTo(1044);
+        assertThat(Mp3FrameScanner.frameLength(MPEG2_64K)).isEqualTo(208);
+        assertThat(Mp3FrameScanner.frameLength(MPEG25_8K)).isEqualTo(72);
+        assertThat(Mp3FrameScanner.frameLength(MPEG1_LAYER1_32K)).isEqualTo(48);
+    }
+
+    @Test
+    void rejectsInvalidHeaders() {
+        // No sync, reserved version, free-format and bad bitrate, reserved sample rate
+        assertThat(Mp3FrameScanner.frameLength(0x00FB9000)).isEqualTo(-1);
+        assertThat(Mp3FrameScanner.frameLength(0xFFEB9000)).isEqualTo(-1);
+        assertThat(Mp3FrameScanner.frameLength(0xFFFB0000)).isEqualTo(-1);
+        assertThat(Mp3FrameScanner.frameLength(0xFFFBF000)).isEqualTo(-1);
+        assertThat(Mp3FrameScanner.frameLength(0xFFFB9C00)).isEqualTo(-1);
+    }
+
+    @Test
+    void cutsVariableBitrateFramesIntoSegmentsByDuration() throws IOException {
+        Mp3Builder mp3 = new Mp3Builder();
+        for (int i = 0; i < 4; i++) {
+            mp3.frame(MPEG1_128K).frame(MPEG1_320K);
+        }
+        int audioEnd = mp3.size();
+        // A trailing ID3v1 tag is not part of any segment
+        mp3.bytes("TAG".getBytes()).zeros(125);
+
+        SegmentIndex index = scan(mp3, 100_000);
+
+        assertThat(index.segmentCount()).isEqualTo(2);
+        assertThat(index.offset(0)).isZero();
+        assertThat(index.length(0)).isEqualTo(2 * 417 + 2 * 1044);
+        assertThat(index.offset(1) + index.length(1)).isEqualTo(audioEnd);
+        assertThat(index.durationMicros(0)).isEqualTo(Math.round(4 * FRAME_MICROS));
+    }
+
+    @Test
+    void skipsALeadingId3v2Tag() throws IOException {
+        Mp3Builder mp3 = new Mp3Builder();
+        // Tag body of 300 bytes (syncsafe 0x00 0x00 0x02 0x2C) hiding a frame header
+        mp3.bytes(new byte[] {'I', 'D', '3', 4, 0, 0, 0, 0, 2, 0x2C}).header(MPEG1_128K).zeros(296);
+        for (int i = 0; i < 3; i++) {
+            mp3.frame(MPEG1_128K);
+        }
+
+        SegmentIndex index = scan(mp3, 1_000_000);
+
+        assertThat(index.segmentCount()).isEqualTo(1);
+        assertThat(index.offset(0)).isEqualTo(310);
+        assertThat(index.length(0)).isEqualTo(3 * 417);
+    }
+
+    @Test
+    void resynchronizesAfterGarbageBetweenFrames() throws IOException {
+        Mp3Builder mp3 = new Mp3Builder();
+        for (int i = 0; i < 10; i++) {
+            mp3.frame(MPEG1_128K);
+        }
+        // A false sync word inside the garbage is not followed by another frame
+        mp3.zeros(50).header(MPEG1_128K).zeros(60);
+        for (int i = 0; i < 10; i++) {
+            mp3.frame(MPEG1_128K_PADDED);
+        }
+
+        SegmentIndex index = scan(mp3, 100_000);
+
+        // Four frames per segment; the garbage stays inside the third one
+        assertThat(index.segmentCount()).isEqualTo(5);
+        assertThat(index.length(1)).isEqualTo(4 * 417);
+        assertThat(index.length(2)).isEqualTo(2 * 417 + 114 + 2 * 418);
+        assertThat(index.offset(4) + index.length(4)).isEqualTo(mp3.size());
+        for (int i = 0; i < index.segmentCount(); i++) {
+            assertThat(index.durationMicros(i)).isEqualTo(Math.round(4 * FRAME_MICROS));
+        }
+    }
+
+    @Test
+    void indexesMpeg2Frames() throws IOException {
+        Mp3Builder mp3 = new Mp3Builder();
+        for (int i = 0; i < 6; i++) {
+            mp3.frame(MPEG2_64K);
+        }
+
+        SegmentIndex index = scan(mp3, 50_000);
+
+        assertThat(index.segmentCount()).isEqualTo(3);
+        assertThat(index.length(0)).isEqualTo(2 * 208);
+        // 576 samples at 22.05 kHz last as long as 1152 at 44.1 kHz
+        assertThat(index.durationMicros(0)).isEqualTo(Math.round(2 * FRAME_MICROS));
+    }
+
+    @Test
+    void findsNoSegmentsInAFileWithoutFrames() throws IOException {
+        SegmentIndex index = scan(new Mp3Builder().zeros(1000), 100_000);
+
+        assertThat(index.segmentCount()).isZero();
+    }
+
+    private SegmentIndex scan(Mp3Builder mp3, long targetMicros) throws IOException {
+        Path file = Files.write(directory.resolve("episode.mp3"), mp3.toByteArray());
+        return Mp3FrameScanner.scan(file, 1, targetMicros);
+    }
+
+    private static final class Mp3Builder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Mp3Builder header(int header) {
+            return bytes(ByteBuffer.allocate(4).putInt(header).array());
+        }
+
+        // A header followed by a silent payload
+        Mp3Builder frame(int header) {
+            return header(header).zeros(Mp3FrameScanner.frameLength(header) - 4);
+        }
+
+        Mp3Builder zeros(int count) {
+            return bytes(new byte[count]);
+        }
+
+        Mp3Builder bytes(byte[] bytes) {
+            out.writeBytes(bytes);
+            return this;
+        }
+
+        int size() {
+            return out.size();
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.replit.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentIndexTest {
+
+    // Magic, version, size, modification time, target duration and segment count
+    private static final int FIRST_BOUNDARY = 36;
+
+    @TempDir
+    Path directory;
+
+    private final SegmentIndex index = new SegmentIndex(5000, 42, 6_000_000,
+            new long[] {100, 2100, 4100, 4900}, new int[] {6_000_000, 6_000_000, 2_400_000});
+
+    private Path indexFile() {
+        return SegmentIndex.pathFor(directory.resolve("episode.mp3"));
+    }
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        index.write(indexFile());
+
+        SegmentIndex read = SegmentIndex.read(indexFile(), 5000, 42, 6_000_000);
+
+        assertThat(read.segmentCount()).isEqualTo(3);
+        assertThat(read.offset(1)).isEqualTo(2100);
+        assertThat(read.length(2)).isEqualTo(800);
+        assertThat(read.durationMicros(2)).isEqualTo(2_400_000);
+        assertThat(SegmentIndex.read(directory.resolve("missing.idx"), 5000, 42, 6_000_000)).isNull();
+    }
+
+    @Test
+    void ignoresAnIndexOfAnotherFileVersionOrTarget() throws IOException {
+        index.write(indexFile());
+
+        assertThat(SegmentIndex.read(indexFile(), 5001, 42, 6_000_000)).isNull();
+        assertThat(SegmentIndex.read(indexFile(), 5000, 43, 6_000_000)).isNull();
+        assertThat(SegmentIndex.read(indexFile(), 5000, 42, 4_000_000)).isNull();
+    }
+
+    @Test
+    void rejectsBoundariesThatAreNotIncreasing() throws IOException {
+        index.write(indexFile());
+        overwriteBoundary(2, 1000);
+
+        assertThat(SegmentIndex.read(indexFile(), 5000, 42, 6_000_000)).isNull();
+    }
+
+    @Test
+    void rejectsBoundariesBeyondTheFile() throws IOException {
+        index.write(indexFile());
+        overwriteBoundary(3, 5001);
+
+        assertThat(SegmentIndex.read(indexFile(), 5000, 42, 6_000_000)).isNull();
+    }
+
+    @Test
+    void rejectsATruncatedIndex() throws IOException {
+        index.write(indexFile());
+        try (RandomAccessFile file = new RandomAccessFile(indexFile().toFile(), "rw")) {
+            file.setLength(file.length() - 4);
+        }
+
+        assertThat(SegmentIndex.read(indexFile(), 5000, 42, 6_000_000)).isNull();
+    }
+
+    @Test
+    void concurrentWritersLeaveOneCompleteIndex() throws IOException {
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[8];
+        for (int i = 0; i < writes.length; i++) {
+            writes[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    index.write(indexFile());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        CompletableFuture.allOf(writes).join();
+
+        assertThat(SegmentIndex.read(indexFile(), 5000, 42, 6_000_000)).isNotNull();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).containsExactly(indexFile());
+        }
+    }
+
+    private void overwriteBoundary(int boundary, long value) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(indexFile().toFile(), "rw")) {
+            file.seek(FIRST_BOUNDARY + 8L * boundary);
+            file.writeLong(value);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.replit.audit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditFileWriterTest {
+
+    private static final DateTimeFormatter ROTATION_SUFFIX =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final AuditRingBuffer ring = new AuditRingBuffer(64, AuditRingBuffer.OverflowPolicy.DROP);
+    private AuditFileWriter writer;
+
+    @BeforeEach
+    void open() throws IOException {
+        writer = new AuditFileWriter(directory, AuditFileWriter.Format.JSON_LINES, 200, 5, false, clock);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeEvents(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            ring.publish(clock.millis(), AuditEventType.ACCESS_GRANTED, "user-" + i, "podcast-" + i, "10.0.0.1", null);
+        }
+        writer.write(ring, count);
+        ring.release(count);
+    }
+
+    private List<String> activeLines() throws IOException {
+        return Files.readAllLines(directory.resolve("audit.jsonl"));
+    }
+
+    private List<Path> rotatedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("audit-") && Files.isRegularFile(p)).toList();
+        }
+    }
+
+    @Test
+    void rotatesOnceTheFileWouldExceedItsLimit() throws IOException {
+        writeEvents(3);
+        writeEvents(3);
+
+        assertThat(activeLines()).hasSize(3);
+        List<Path> rotated = rotatedFiles();
+        assertThat(rotated).hasSize(1);
+        assertThat(Files.readAllLines(rotated.get(0))).hasSize(3);
+    }
+
+    @Test
+    void keepsWritingToTheActiveFileWhenRotationFails() throws IOException {
+        writeEvents(3);
+        // A non-empty directory under the rotation target's name makes the rename fail
+        Path blocker = directory.resolve("audit-" + ROTATION_SUFFIX.format(clock.instant()) + ".jsonl");
+        Files.createDirectories(blocker.resolve("occupied"));
+
+        writeEvents(3);
+        assertThat(activeLines()).hasSize(6);
+
+        // No new attempt until the retry interval has passed
+        Files.delete(blocker.resolve("occupied"));
+        Files.delete(blocker);
+        writeEvents(3);
+        assertThat(activeLines()).hasSize(9);
+        assertThat(rotatedFiles()).isEmpty();
+
+        clock.advance(Duration.ofMinutes(2));
+        writeEvents(3);
+        assertThat(activeLines()).hasSize(3);
+        List<Path> rotated = rotatedFiles();
+        assertThat(rotated).hasSize(1);
+        assertThat(Files.readAllLines(rotated.get(0))).hasSize(9);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.replit.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.replit.service.AccessEventService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AccessEventControllerTest {
+
+    private final AccessEventService service = mock(AccessEventService.class);
+    private final AccessEventController controller = new AccessEventController(service, new ObjectMapper());
+
+    private HttpStatus push(String body) {
+        when(service.isEnabled()).thenReturn(true);
+        when(service.isSignatureValid(any(), anyString())).thenReturn(true);
+        return HttpStatus.valueOf(controller.pushEvents(body.getBytes(StandardCharsets.UTF_8), "sha256=00")
+                .getStatusCode().value());
+    }
+
+    @Test
+    void rejectsMalformedBatchesWithBadRequest() {
+        assertThat(push("{\"events\": null}")).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(push("null")).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(push("{\"events\": [null]}")).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(push("{\"events\": ")).isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(service, never()).apply(any());
+    }
+
+    @Test
+    void rejectsUnsignedCursorReads() {
+        when(service.isEnabled()).thenReturn(true);
+
+        assertThat(controller.cursor("1700000000", "sha256=00").getStatusCode().value()).isEqualTo(401);
+        verify(service, never()).getLastSequence();
+    }
+}
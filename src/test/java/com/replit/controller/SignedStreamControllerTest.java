@@ -0,0 +1,96 @@
+package com.replit.controller;
+
+import com.replit.audio.AudioStreamingService;
+import com.replit.audio.HlsService;
+import com.replit.security.StreamUrlSigner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class SignedStreamControllerTest {
+
+    private final AudioStreamingService streamingService = mock(AudioStreamingService.class);
+    private final HlsService hlsService = mock(HlsService.class);
+
+    private SignedStreamController controller(StreamUrlSigner signer) {
+        when(streamingService.buildResponse(any(), any(), anyBoolean()))
+                .thenReturn(CompletableFuture.completedFuture(ResponseEntity.ok().build()));
+        when(hlsService.playlist(any(), any())).thenReturn(CompletableFuture.completedFuture(ResponseEntity.ok().build()));
+        when(hlsService.segment(any(), anyInt(), any())).thenReturn(CompletableFuture.completedFuture(ResponseEntity.ok().build()));
+        return new SignedStreamController(signer, streamingService, hlsService);
+    }
+
+    private static StreamUrlSigner signer(String secret) {
+        return new StreamUrlSigner(secret, Duration.ofMinutes(5), true, new SimpleMeterRegistry());
+    }
+
+    private static MockHttpServletRequest request(String clientIp) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(clientIp);
+        return request;
+    }
+
+    private static int status(CompletableFuture<ResponseEntity<?>> response) {
+        return response.join().getStatusCode().value();
+    }
+
+    @Test
+    void servesEverySignedPathForAValidToken() {
+        StreamUrlSigner signer = signer("test-secret");
+        SignedStreamController controller = controller(signer);
+        String token = signer.issue("user-1", "podcast-1", "10.0.0.1").token();
+
+        assertThat(status(controller.stream(token, "podcast-1", null, request("10.0.0.1")))).isEqualTo(200);
+        assertThat(status(controller.hlsPlaylist(token, "podcast-1", request("10.0.0.1")))).isEqualTo(200);
+        assertThat(status(controller.hlsSegment(token, "podcast-1", 3, request("10.0.0.1")))).isEqualTo(200);
+        verify(streamingService).buildResponse(eq("podcast-1"), any(), anyBoolean());
+        verify(hlsService).segment(eq("podcast-1"), eq(3), any());
+    }
+
+    @Test
+    void rejectsATokenForAnotherResourceOrAddress() {
+        StreamUrlSigner signer = signer("test-secret");
+        SignedStreamController controller = controller(signer);
+        String token = signer.issue("user-1", "podcast-1", "10.0.0.1").token();
+
+        assertThat(status(controller.stream(token, "podcast-2", null, request("10.0.0.1")))).isEqualTo(403);
+        assertThat(status(controller.stream(token, "podcast-1", null, request("10.0.0.2")))).isEqualTo(403);
+        assertThat(status(controller.hlsPlaylist("garbage", "podcast-1", request("10.0.0.1")))).isEqualTo(403);
+        assertThat(status(controller.hlsSegment("garbage", "podcast-1", 0, request("10.0.0.1")))).isEqualTo(403);
+        verifyNoInteractions(streamingService, hlsService);
+    }
+
+    @Test
+    void rejectsAnInvalidResourceIdBeforeTheToken() {
+        StreamUrlSigner signer = signer("test-secret");
+        SignedStreamController controller = controller(signer);
+
+        assertThat(status(controller.stream("garbage", "../etc", null, request("10.0.0.1")))).isEqualTo(400);
+        verifyNoInteractions(streamingService, hlsService);
+    }
+
+    @Test
+    void answersNotFoundOnEverySignedPathWhenSigningIsDisabled() {
+        String token = signer("test-secret").issue("user-1", "podcast-1", "10.0.0.1").token();
+        SignedStreamController controller = controller(signer(""));
+
+        assertThat(status(controller.stream(token, "podcast-1", null, request("10.0.0.1")))).isEqualTo(404);
+        assertThat(status(controller.hlsPlaylist(token, "podcast-1", request("10.0.0.1")))).isEqualTo(404);
+        assertThat(status(controller.hlsSegment(token, "podcast-1", 0, request("10.0.0.1")))).isEqualTo(404);
+        verifyNoInteractions(streamingService, hlsService);
+    }
+}
@@ -0,0 +1,55 @@
+package com.replit.ratelimit;
+
+import com.replit.ratelimit.SharedCounterStore.Reservation;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemorySharedCounterStoreTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final InMemorySharedCounterStore store = new InMemorySharedCounterStore(Duration.ofMinutes(10), now::get);
+    private final RateLimitProperties.Limit limit = new RateLimitProperties.Limit(10, 1);
+
+    @Test
+    void grantsUpToTheBucketCapacity() {
+        assertThat(store.reserve("k", 4, limit).join()).isEqualTo(new Reservation(4, 0));
+        assertThat(store.reserve("k", 10, limit).join()).isEqualTo(new Reservation(6, 0));
+
+        Reservation empty = store.reserve("k", 1, limit).join();
+        assertThat(empty.granted()).isZero();
+        assertThat(empty.retryAfterNanos()).isBetween(TimeUnit.MILLISECONDS.toNanos(999), TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void refillsContinuously() {
+        store.reserve("k", 10, limit).join();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(2500));
+
+        assertThat(store.reserve("k", 10, limit).join().granted()).isEqualTo(2);
+    }
+
+    @Test
+    void takesReleasedTokensBackUpToTheCapacity() {
+        store.reserve("k", 10, limit).join();
+
+        store.release("k", 3, limit).join();
+        assertThat(store.reserve("k", 10, limit).join().granted()).isEqualTo(3);
+
+        store.release("k", 50, limit).join();
+        assertThat(store.reserve("k", 20, limit).join().granted()).isEqualTo(10);
+    }
+
+    @Test
+    void keepsOneBucketPerKey() {
+        store.reserve("a", 10, limit).join();
+
+        assertThat(store.reserve("b", 10, limit).join().granted()).isEqualTo(10);
+        assertThat(store.reserve("a", 1, limit).join().granted()).isZero();
+    }
+}
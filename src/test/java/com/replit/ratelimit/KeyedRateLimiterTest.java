@@ -0,0 +1,53 @@
+package com.replit.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyedRateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Refills are slow enough that nothing comes back while a test runs
+    private KeyedRateLimiter limiter(int userCapacity, int ipCapacity) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setTiers(Map.of(RateLimitProperties.DEFAULT_TIER, new RateLimitProperties.Limit(userCapacity, 0.001)));
+        properties.setPerIp(new RateLimitProperties.Limit(ipCapacity, 0.001));
+        return new KeyedRateLimiter(properties, new LocalRateLimitBackend(properties), meterRegistry);
+    }
+
+    private double rejected(String scope) {
+        return meterRegistry.get("rate_limit_rejected_total").tag("scope", scope).counter().count();
+    }
+
+    @Test
+    void aRejectedUserDoesNotSpendTheCapacityOfTheirAddress() {
+        KeyedRateLimiter limiter = limiter(2, 3);
+
+        assertThat(limiter.tryAcquire("alice", null, "10.0.0.1")).isZero();
+        assertThat(limiter.tryAcquire("alice", null, "10.0.0.1")).isZero();
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire("alice", null, "10.0.0.1")).isPositive();
+        }
+        assertThat(rejected("user")).isEqualTo(10);
+
+        // One request's worth of the address is left for others behind it
+        assertThat(limiter.tryAcquire("bob", null, "10.0.0.1")).isZero();
+        assertThat(limiter.tryAcquire("bob", null, "10.0.0.1")).isPositive();
+        assertThat(rejected("ip")).isEqualTo(1);
+    }
+
+    @Test
+    void limitsEachAddressAcrossUsers() {
+        KeyedRateLimiter limiter = limiter(5, 2);
+
+        assertThat(limiter.tryAcquire("alice", null, "10.0.0.1")).isZero();
+        assertThat(limiter.tryAcquire("bob", null, "10.0.0.1")).isZero();
+        assertThat(limiter.tryAcquire("carol", null, "10.0.0.1")).isPositive();
+        assertThat(limiter.tryAcquire("carol", null, "10.0.0.2")).isZero();
+        assertThat(meterRegistry.get("rate_limit_allowed_total").counter().count()).isEqualTo(3);
+    }
+}
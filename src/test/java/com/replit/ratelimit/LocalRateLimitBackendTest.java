@@ -0,0 +1,29 @@
+package com.replit.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRateLimitBackendTest {
+
+    private final RateLimitProperties.Limit limit = new RateLimitProperties.Limit(2, 1);
+
+    @Test
+    void rejectsNewKeysInsteadOfEvictingActiveBuckets() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setMaxKeys(2);
+        LocalRateLimitBackend backend = new LocalRateLimitBackend(properties);
+
+        assertThat(backend.tryAcquire("a", limit, 0)).isZero();
+        assertThat(backend.tryAcquire("a", limit, 0)).isZero();
+        assertThat(backend.tryAcquire("b", limit, 0)).isZero();
+
+        assertThat(backend.tryAcquire("c", limit, 0)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(backend.trackedKeys()).isEqualTo(2);
+        // "a" keeps its drained bucket rather than getting a fresh burst
+        assertThat(backend.tryAcquire("a", limit, 0)).isPositive();
+        assertThat(backend.tryAcquire("b", limit, 0)).isZero();
+    }
+}
@@ -0,0 +1,72 @@
+package com.replit.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SharedRateLimitBackendTest {
+
+    private final RateLimitProperties properties = new RateLimitProperties();
+    private final RateLimitProperties.Limit limit = new RateLimitProperties.Limit(10, 1);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private int admitUntilRejected(SharedRateLimitBackend backend, String key) {
+        int admitted = 0;
+        while (backend.tryAcquire(key, limit, 0) == 0) {
+            admitted++;
+        }
+        return admitted;
+    }
+
+    @Test
+    void chargesSpentCreditToTheStore() {
+        AtomicLong now = new AtomicLong();
+        InMemorySharedCounterStore store = new InMemorySharedCounterStore(Duration.ofMinutes(10), now::get);
+        SharedRateLimitBackend backend = new SharedRateLimitBackend(store, properties, 4, 2, meterRegistry);
+
+        // The whole bucket, plus one credited token that the empty bucket could not cover
+        assertThat(admitUntilRejected(backend, "k")).isEqualTo(11);
+
+        // Five tokens refill; the first of them pays for the credited one
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertThat(admitUntilRejected(backend, "k")).isEqualTo(4);
+    }
+
+    @Test
+    void admitsTheCreditWhileTheFirstReservationIsPending() {
+        SharedCounterStore store = mock(SharedCounterStore.class);
+        when(store.reserve(anyString(), anyInt(), any())).thenReturn(new CompletableFuture<>());
+        SharedRateLimitBackend backend = new SharedRateLimitBackend(store, properties, 4, 2, meterRegistry);
+
+        assertThat(backend.tryAcquire("k", limit, 0)).isZero();
+        assertThat(backend.tryAcquire("k", limit, 0)).isZero();
+        assertThat(backend.tryAcquire("k", limit, 0)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void fallsBackToLocalBucketsWhenTheStoreFails() {
+        SharedCounterStore store = mock(SharedCounterStore.class);
+        when(store.reserve(anyString(), anyInt(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("connection refused")));
+        SharedRateLimitBackend backend = new SharedRateLimitBackend(store, properties, 4, 0, meterRegistry);
+
+        for (int i = 0; i < limit.getCapacity(); i++) {
+            assertThat(backend.tryAcquire("k", limit, 0)).isZero();
+        }
+        assertThat(backend.tryAcquire("k", limit, 0)).isPositive();
+        assertThat(meterRegistry.get("rate_limit_shared_fallback_total").counter().count()).isEqualTo(11);
+    }
+}
@@ -0,0 +1,84 @@
+package com.replit.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final TokenBucket bucket = new TokenBucket(new RateLimitProperties.Limit(3, 2));
+
+    @Test
+    void admitsABurstUpToCapacity() {
+        long now = 5 * SECOND;
+
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        // Two tokens per second: the next one is half a second away
+        assertThat(bucket.tryAcquire(now)).isEqualTo(SECOND / 2);
+    }
+
+    @Test
+    void rejectedRequestsConsumeNothing() {
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            bucket.tryAcquire(now);
+        }
+
+        assertThat(bucket.tryAcquire(now + SECOND / 4)).isEqualTo(SECOND / 4);
+        assertThat(bucket.tryAcquire(now + SECOND / 4)).isEqualTo(SECOND / 4);
+        assertThat(bucket.tryAcquire(now + SECOND / 2)).isZero();
+        assertThat(bucket.tryAcquire(now + SECOND / 2)).isEqualTo(SECOND / 2);
+    }
+
+    @Test
+    void refillsContinuouslyButNeverBeyondCapacity() {
+        for (int i = 0; i < 3; i++) {
+            bucket.tryAcquire(0);
+        }
+
+        // One token after half a second, then a full bucket after a long pause
+        assertThat(bucket.tryAcquire(SECOND / 2)).isZero();
+        long later = 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(later)).isZero();
+        }
+        assertThat(bucket.tryAcquire(later)).isPositive();
+    }
+
+    @Test
+    void concurrentRequestsNeverTakeMoreThanTheBurst() throws InterruptedException {
+        TokenBucket shared = new TokenBucket(new RateLimitProperties.Limit(100, 1));
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (shared.tryAcquire(0) == 0) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(admitted).hasValue(100);
+    }
+}
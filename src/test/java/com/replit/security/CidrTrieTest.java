@@ -0,0 +1,66 @@
+package com.replit.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CidrTrieTest {
+
+    private static byte[] address(String literal) {
+        return CidrTrie.parseLiteral(literal);
+    }
+
+    @Test
+    void matchesAddressesInsideIpv4Blocks() {
+        CidrTrie trie = new CidrTrie();
+        trie.add("10.0.0.0/8");
+        trie.add("192.168.1.0/24");
+        trie.add("203.0.113.7");
+
+        assertThat(trie.contains(address("10.255.0.1"))).isTrue();
+        assertThat(trie.contains(address("192.168.1.200"))).isTrue();
+        assertThat(trie.contains(address("203.0.113.7"))).isTrue();
+        assertThat(trie.contains(address("11.0.0.1"))).isFalse();
+        assertThat(trie.contains(address("192.168.2.1"))).isFalse();
+        assertThat(trie.contains(address("203.0.113.8"))).isFalse();
+    }
+
+    @Test
+    void keepsAddressFamiliesApart() {
+        CidrTrie trie = new CidrTrie();
+        trie.add("fd00::/8");
+        trie.add("0.0.0.0/0");
+
+        assertThat(trie.contains(address("fd12:3456::1"))).isTrue();
+        assertThat(trie.contains(address("2001:db8::1"))).isFalse();
+        assertThat(trie.contains(address("198.51.100.1"))).isTrue();
+    }
+
+    @Test
+    void emptyTrieContainsNothing() {
+        CidrTrie trie = new CidrTrie();
+
+        assertThat(trie.contains(address("127.0.0.1"))).isFalse();
+        assertThat(trie.contains(address("::1"))).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidBlocks() {
+        CidrTrie trie = new CidrTrie();
+
+        assertThatThrownBy(() -> trie.add("10.0.0.0/33")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> trie.add("proxy.internal/8")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void parsesLiteralsWithPortsButNeverHostNames() {
+        assertThat(address("1.2.3.4:8080")).containsExactly(1, 2, 3, 4);
+        assertThat(address("[::1]:443")).hasSize(16);
+        assertThat(address(" 2001:db8::1 ")).hasSize(16);
+        assertThat(address("256.1.1.1")).isNull();
+        assertThat(address("localhost")).isNull();
+        assertThat(address("fe80::1%eth0")).isNull();
+        assertThat(address("unknown")).isNull();
+    }
+}
@@ -0,0 +1,55 @@
+package com.replit.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientAddressResolverTest {
+
+    private final ClientAddressResolver resolver = new ClientAddressResolver(List.of("127.0.0.1/32", "10.0.0.0/8"));
+
+    @Test
+    void usesTheSocketPeerWithoutAHeader() {
+        assertThat(resolver.resolve("10.0.0.5", List.of())).isEqualTo("10.0.0.5");
+        assertThat(resolver.resolve("10.0.0.5", " ")).isEqualTo("10.0.0.5");
+    }
+
+    @Test
+    void ignoresTheHeaderFromUntrustedPeers() {
+        assertThat(resolver.resolve("198.51.100.9", "203.0.113.1")).isEqualTo("198.51.100.9");
+    }
+
+    @Test
+    void takesTheFirstUntrustedHopFromTheRight() {
+        assertThat(resolver.resolve("127.0.0.1", "203.0.113.1, 10.1.1.1, 10.2.2.2")).isEqualTo("203.0.113.1");
+    }
+
+    @Test
+    void ignoresAddressesTheClientWroteItself() {
+        // The client sent "X-Forwarded-For: 10.9.9.9, 1.1.1.1"; the edge proxy appended its peer
+        assertThat(resolver.resolve("127.0.0.1", "10.9.9.9, 1.1.1.1, 198.51.100.7")).isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void stopsAtTheLastVerifiableHopOnGarbage() {
+        assertThat(resolver.resolve("127.0.0.1", "203.0.113.1, unknown, 10.1.1.1")).isEqualTo("10.1.1.1");
+    }
+
+    @Test
+    void walksEveryHeaderFieldAsOneList() {
+        // A spoofed first field must not hide the hop a trusted proxy appended as a second one
+        List<String> fields = List.of("203.0.113.66", "198.51.100.7, 10.1.1.1");
+
+        assertThat(resolver.resolve("127.0.0.1", fields)).isEqualTo("198.51.100.7");
+        assertThat(resolver.resolve("127.0.0.1", List.of("10.1.1.1", "10.2.2.2"))).isEqualTo("10.1.1.1");
+    }
+
+    @Test
+    void normalizesIpv6Hops() {
+        ClientAddressResolver ipv6 = new ClientAddressResolver(List.of("::1/128"));
+
+        assertThat(ipv6.resolve("::1", "[2001:db8:0:0::1]:51000")).isEqualTo("2001:db8:0:0:0:0:0:1");
+    }
+}
@@ -0,0 +1,82 @@
+package com.replit.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntitlementClaimTest {
+
+    private static final long ISSUED_AT = 1_700_000_000_000L;
+    private static final Duration MAX_GRANT_AGE = Duration.ofMinutes(15);
+
+    private static EntitlementClaim claim(List<String> allow, List<String> deny) {
+        return new EntitlementClaim(allow, deny, ISSUED_AT);
+    }
+
+    @Test
+    void matchesResourceIdsByPrefix() {
+        EntitlementClaim claim = claim(List.of("podcast-", "free-"), List.of("premium-"));
+
+        assertThat(claim.evaluate("podcast-1")).contains(true);
+        assertThat(claim.evaluate("free-episode")).contains(true);
+        assertThat(claim.evaluate("premium-1")).contains(false);
+        // Prefixes only: neither a match inside the id nor a shorter id counts
+        assertThat(claim.evaluate("my-podcast-1")).isEmpty();
+        assertThat(claim.evaluate("podcast")).isEmpty();
+        assertThat(claim.evaluate("other-1")).isEmpty();
+    }
+
+    @Test
+    void aDenyMatchWinsOverAnAllowMatch() {
+        EntitlementClaim claim = claim(List.of("podcast-"), List.of("podcast-premium-"));
+
+        assertThat(claim.evaluate("podcast-premium-1")).contains(false);
+        assertThat(claim.evaluate("podcast-1")).contains(true);
+    }
+
+    @Test
+    void trustsGrantsOnlyFromRecentTokens() {
+        EntitlementClaim claim = claim(List.of("podcast-"), List.of("premium-"));
+        long cutoff = ISSUED_AT + MAX_GRANT_AGE.toMillis();
+
+        assertThat(claim.evaluate("podcast-1", MAX_GRANT_AGE, ISSUED_AT)).contains(true);
+        assertThat(claim.evaluate("podcast-1", MAX_GRANT_AGE, cutoff)).contains(true);
+        assertThat(claim.evaluate("podcast-1", MAX_GRANT_AGE, cutoff + 1)).isEmpty();
+    }
+
+    @Test
+    void honoursDenialsFromTokensOfAnyAge() {
+        EntitlementClaim claim = claim(List.of("podcast-"), List.of("premium-"));
+        long muchLater = ISSUED_AT + Duration.ofDays(1).toMillis();
+
+        assertThat(claim.evaluate("premium-1", MAX_GRANT_AGE, muchLater)).contains(false);
+        assertThat(claim.evaluate("other-1", MAX_GRANT_AGE, muchLater)).isEmpty();
+    }
+
+    @Test
+    void parsesTheClaimAndIgnoresMalformedEntries() {
+        Map<String, Object> raw = Map.of(
+                "allow", Arrays.asList("podcast-", "", 42, null),
+                "deny", "premium-");
+
+        EntitlementClaim claim = EntitlementClaim.fromClaim(raw, ISSUED_AT).orElseThrow();
+
+        assertThat(claim.getIssuedAtMillis()).isEqualTo(ISSUED_AT);
+        assertThat(claim.evaluate("podcast-1")).contains(true);
+        // An empty prefix would match every resource; a deny that is not a list is ignored
+        assertThat(claim.evaluate("other-1")).isEmpty();
+        assertThat(claim.evaluate("premium-1")).isEmpty();
+    }
+
+    @Test
+    void hasNoClaimWithoutAnyPrefixes() {
+        assertThat(EntitlementClaim.fromClaim(null, ISSUED_AT)).isEmpty();
+        assertThat(EntitlementClaim.fromClaim("podcast-", ISSUED_AT)).isEmpty();
+        assertThat(EntitlementClaim.fromClaim(Map.of("allow", List.of("")), ISSUED_AT)).isEmpty();
+    }
+}
@@ -0,0 +1,149 @@
+package com.replit.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamUrlSignerTest {
+
+    private static final String SECRET = "test-secret";
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private StreamUrlSigner signer(boolean bindClientIp, Instant now) {
+        return new StreamUrlSigner(SECRET, TTL, bindClientIp, meterRegistry, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("stream_url_rejected_total").tag("reason", reason).counter().count();
+    }
+
+    private static String[] parts(String token) {
+        return token.split("\\.");
+    }
+
+    private static String join(String[] parts) {
+        return String.join(".", parts);
+    }
+
+    @Test
+    void anIssuedTokenRoundTrips() {
+        StreamUrlSigner signer = signer(false, NOW);
+
+        StreamUrlSigner.SignedToken token = signer.issue("user-1", "podcast-1", "10.0.0.1");
+
+        assertThat(token.expiresAt()).isEqualTo(NOW.plus(TTL));
+        assertThat(signer.verify(token.token(), "podcast-1", "10.0.0.1")).contains("user-1");
+        // Not bound, so any client address will do
+        assertThat(signer.verify(token.token(), "podcast-1", "10.0.0.2")).contains("user-1");
+    }
+
+    @Test
+    void rejectsATokenForAnotherResource() {
+        StreamUrlSigner signer = signer(false, NOW);
+        String token = signer.issue("user-1", "podcast-1", "10.0.0.1").token();
+
+        assertThat(signer.verify(token, "podcast-2", "10.0.0.1")).isEmpty();
+        assertThat(rejected("invalid")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsABoundTokenFromAnotherAddress() {
+        StreamUrlSigner signer = signer(true, NOW);
+        String token = signer.issue("user-1", "podcast-1", "10.0.0.1").token();
+
+        assertThat(signer.verify(token, "podcast-1", "10.0.0.1")).contains("user-1");
+        assertThat(signer.verify(token, "podcast-1", "10.0.0.2")).isEmpty();
+    }
+
+    @Test
+    void rejectsABoundTokenWhoseBindingFlagWasCleared() {
+        StreamUrlSigner signer = signer(true, NOW);
+        String[] parts = parts(signer.issue("user-1", "podcast-1", "10.0.0.1").token());
+        parts[1] = "0";
+
+        assertThat(signer.verify(join(parts), "podcast-1", "10.0.0.2")).isEmpty();
+    }
+
+    @Test
+    void rejectsATokenIssuedToAnotherUser() {
+        StreamUrlSigner signer = signer(false, NOW);
+        String[] parts = parts(signer.issue("user-1", "podcast-1", "10.0.0.1").token());
+        parts[2] = Base64.getUrlEncoder().withoutPadding().encodeToString("user-2".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(signer.verify(join(parts), "podcast-1", "10.0.0.1")).isEmpty();
+    }
+
+    @Test
+    void rejectsATamperedMac() {
+        StreamUrlSigner signer = signer(false, NOW);
+        String[] parts = parts(signer.issue("user-1", "podcast-1", "10.0.0.1").token());
+        parts[3] = (parts[3].charAt(0) == 'A' ? "B" : "A") + parts[3].substring(1);
+
+        assertThat(signer.verify(join(parts), "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(rejected("invalid")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsATokenSignedWithAnotherSecret() {
+        StreamUrlSigner other = new StreamUrlSigner("other-secret", TTL, false, meterRegistry,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+        String token = other.issue("user-1", "podcast-1", "10.0.0.1").token();
+
+        assertThat(signer(false, NOW).verify(token, "podcast-1", "10.0.0.1")).isEmpty();
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        StreamUrlSigner signer = signer(false, NOW);
+
+        assertThat(signer.verify(null, "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(signer.verify("", "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(signer.verify("garbage", "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(signer.verify("1.2.dXNlcg.AAAA", "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(signer.verify("soon.0.dXNlcg.AAAA", "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(signer.verify("1.0.!!.AAAA", "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(signer.verify("1.0.dXNlcg.AAAA.extra", "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(rejected("invalid")).isEqualTo(6);
+    }
+
+    @Test
+    void rejectsAnExpiredTokenOnlyAfterCheckingItsMac() {
+        String token = signer(false, NOW).issue("user-1", "podcast-1", "10.0.0.1").token();
+        StreamUrlSigner later = signer(false, NOW.plus(TTL));
+        StreamUrlSigner expired = signer(false, NOW.plus(TTL).plusSeconds(1));
+
+        assertThat(later.verify(token, "podcast-1", "10.0.0.1")).contains("user-1");
+        assertThat(expired.verify(token, "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(rejected("expired")).isEqualTo(1);
+
+        // A forged token that is also expired counts as invalid, so expiry cannot be probed
+        String[] forged = parts(token);
+        forged[3] = (forged[3].charAt(0) == 'A' ? "B" : "A") + forged[3].substring(1);
+        assertThat(expired.verify(join(forged), "podcast-1", "10.0.0.1")).isEmpty();
+        assertThat(rejected("expired")).isEqualTo(1);
+        assertThat(rejected("invalid")).isEqualTo(1);
+    }
+
+    @Test
+    void isDisabledWithoutASecret() {
+        StreamUrlSigner signer = new StreamUrlSigner(" ", TTL, false, meterRegistry, Clock.fixed(NOW, ZoneOffset.UTC));
+        String token = signer(false, NOW).issue("user-1", "podcast-1", "10.0.0.1").token();
+
+        assertThat(signer.isEnabled()).isFalse();
+        assertThat(signer.verify(token, "podcast-1", "10.0.0.1")).isEmpty();
+        assertThatThrownBy(() -> signer.issue("user-1", "podcast-1", "10.0.0.1"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
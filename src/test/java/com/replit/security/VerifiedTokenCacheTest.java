@@ -0,0 +1,115 @@
+package com.replit.security;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedTokenCacheTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final MutableClock clock = new MutableClock(START);
+    // The cache's own expiry follows the same clock unless a test needs them to diverge
+    private final Ticker ticker = () -> Duration.between(START, clock.instant()).toNanos();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private VerifiedTokenCache cache(Ticker ticker) {
+        return new VerifiedTokenCache(true, 100, Duration.ofMinutes(10), meterRegistry, clock, ticker);
+    }
+
+    private JwtPrincipal expiringIn(Duration duration) {
+        return new JwtPrincipal("user-1", clock.instant(), clock.instant().plus(duration),
+                "issuer", "audience", "USER", null, null);
+    }
+
+    @Test
+    void servesCachedTokensUntilTheyExpire() {
+        VerifiedTokenCache cache = cache(ticker);
+        JwtPrincipal principal = expiringIn(Duration.ofMinutes(5));
+        cache.put("token", principal);
+
+        assertThat(cache.get("token")).contains(principal);
+        assertThat(cache.get("other")).isEmpty();
+        assertThat(meterRegistry.get("jwt_token_cache_hits_total").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("jwt_token_cache_misses_total").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void clampsEntriesToTheMaximumTtl() {
+        VerifiedTokenCache cache = cache(ticker);
+        cache.put("token", expiringIn(Duration.ofHours(1)));
+
+        clock.advance(Duration.ofMinutes(9));
+        assertThat(cache.get("token")).isPresent();
+
+        // Still valid for fifty minutes, but it has been cached for the maximum TTL
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(cache.get("token")).isEmpty();
+    }
+
+    @Test
+    void doesNotCacheAlreadyExpiredTokens() {
+        VerifiedTokenCache cache = cache(() -> 0);
+        cache.put("token", expiringIn(Duration.ofSeconds(-1)));
+
+        assertThat(cache.get("token")).isEmpty();
+    }
+
+    @Test
+    void rejectsACachedTokenOnceItHasExpired() {
+        // A ticker that never advances: only the exp re-check on read can reject the token
+        VerifiedTokenCache cache = cache(() -> 0);
+        cache.put("token", expiringIn(Duration.ofMinutes(5)));
+
+        clock.advance(Duration.ofMinutes(5));
+
+        assertThat(cache.get("token")).isEmpty();
+        assertThat(meterRegistry.get("jwt_token_cache_misses_total").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void cachesNothingWhenDisabled() {
+        VerifiedTokenCache disabled = new VerifiedTokenCache(false, 100, Duration.ofMinutes(10), meterRegistry,
+                clock, ticker);
+        disabled.put("token", expiringIn(Duration.ofMinutes(5)));
+
+        assertThat(disabled.get("token")).isEmpty();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.replit.service;
+
+import com.replit.dto.AccessCheckBatchRequest;
+import com.replit.dto.AccessCheckBatchResponse;
+import com.replit.dto.AccessCheckRequest;
+import com.replit.dto.AccessCheckResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AccessCheckBatcherTest {
+
+    private final MainAppClient mainAppClient = mock(MainAppClient.class);
+    private final CompletableFuture<AccessCheckBatchResponse> response = new CompletableFuture<>();
+    private AccessCheckBatcher batcher;
+
+    @AfterEach
+    void shutdown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    private AccessCheckBatcher batcher(Duration window, int maxSize) {
+        when(mainAppClient.checkAccessBatch(any())).thenReturn(response);
+        batcher = new AccessCheckBatcher(mainAppClient, true, window, maxSize, new SimpleMeterRegistry());
+        return batcher;
+    }
+
+    @Test
+    void flushesAsSoonAsTheBatchIsFull() {
+        AccessCheckBatcher batcher = batcher(Duration.ofHours(1), 3);
+
+        batcher.submit("u1", "a");
+        batcher.submit("u2", "b");
+        verify(mainAppClient, never()).checkAccessBatch(any());
+
+        batcher.submit("u3", "c");
+        assertThat(sentBatch()).extracting(AccessCheckRequest::getResourceId).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void flushesAPartialBatchWhenTheWindowCloses() {
+        AccessCheckBatcher batcher = batcher(Duration.ofMillis(20), 64);
+
+        batcher.submit("u1", "a");
+        batcher.submit("u2", "b");
+
+        ArgumentCaptor<AccessCheckBatchRequest> request = ArgumentCaptor.forClass(AccessCheckBatchRequest.class);
+        verify(mainAppClient, timeout(2000)).checkAccessBatch(request.capture());
+        assertThat(request.getValue().getChecks()).extracting(AccessCheckRequest::getResourceId).containsExactly("a", "b");
+    }
+
+    @Test
+    void completesEachWaiterWithItsOwnDecision() {
+        AccessCheckBatcher batcher = batcher(Duration.ofHours(1), 4);
+
+        CompletableFuture<Boolean> granted = batcher.submit("u1", "a");
+        CompletableFuture<Boolean> sameKey = batcher.submit("u1", "a");
+        CompletableFuture<Boolean> denied = batcher.submit("u2", "b");
+        CompletableFuture<Boolean> omitted = batcher.submit("u3", "c");
+        response.complete(new AccessCheckBatchResponse(List.of(
+                new AccessCheckResult("u1", "a", true),
+                new AccessCheckResult("u2", "b", false))));
+
+        assertThat(granted.join()).isTrue();
+        assertThat(sameKey.join()).isTrue();
+        assertThat(denied.join()).isFalse();
+        assertThatThrownBy(omitted::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void failsEveryWaiterWhenTheBatchFails() {
+        AccessCheckBatcher batcher = batcher(Duration.ofHours(1), 2);
+
+        CompletableFuture<Boolean> first = batcher.submit("u1", "a");
+        CompletableFuture<Boolean> second = batcher.submit("u2", "b");
+        response.completeExceptionally(new IOException("connection reset"));
+
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IOException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void failsEveryWaiterWhenTheResponseHasNoResults() {
+        AccessCheckBatcher batcher = batcher(Duration.ofHours(1), 2);
+
+        CompletableFuture<Boolean> first = batcher.submit("u1", "a");
+        CompletableFuture<Boolean> second = batcher.submit("u2", "b");
+        response.complete(new AccessCheckBatchResponse(null));
+
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void failsEveryWaiterWhenAResultIsNull() {
+        AccessCheckBatcher batcher = batcher(Duration.ofHours(1), 2);
+
+        CompletableFuture<Boolean> first = batcher.submit("u1", "a");
+        CompletableFuture<Boolean> second = batcher.submit("u2", "b");
+        response.complete(new AccessCheckBatchResponse(Arrays.asList(
+                new AccessCheckResult("u1", "a", true), null)));
+
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    private List<AccessCheckRequest> sentBatch() {
+        ArgumentCaptor<AccessCheckBatchRequest> request = ArgumentCaptor.forClass(AccessCheckBatchRequest.class);
+        verify(mainAppClient).checkAccessBatch(request.capture());
+        return request.getValue().getChecks();
+    }
+}
@@ -0,0 +1,114 @@
+package com.replit.service;
+
+import com.replit.dto.AccessEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class AccessEventServiceTest {
+
+    private static final String SECRET = "test-secret";
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final AccessService accessService = mock(AccessService.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AccessEventService service = new AccessEventService(accessService, SECRET, Duration.ofMinutes(5),
+            meterRegistry, Clock.fixed(NOW, ZoneOffset.UTC));
+
+    static String sign(String payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static AccessEvent revoke(long sequence, String userId, String resourceId) {
+        return new AccessEvent(sequence, AccessEvent.Type.REVOKE, userId, resourceId);
+    }
+
+    @Test
+    void ignoresReplayedSequences() {
+        service.apply(List.of(revoke(1, "u1", "a"), revoke(2, "u2", "b")));
+
+        AccessEventService.ApplyResult replay = service.apply(List.of(revoke(2, "u2", "b"), revoke(3, "u3", "c")));
+
+        assertThat(replay).isEqualTo(new AccessEventService.ApplyResult(1, 1, false, 3));
+        verify(accessService, times(1)).invalidateCachedDecision("u2", "b");
+        verify(accessService).invalidateCachedDecision("u3", "c");
+        verify(accessService, never()).invalidateAllCachedDecisions();
+        assertThat(meterRegistry.get("access_events_duplicate_total").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void appliesABatchInSequenceOrder() {
+        service.apply(List.of(revoke(1, "u1", "a")));
+
+        AccessEventService.ApplyResult result = service.apply(List.of(revoke(3, "u3", "c"), revoke(2, "u2", "b")));
+
+        assertThat(result).isEqualTo(new AccessEventService.ApplyResult(2, 0, false, 3));
+        verify(accessService, never()).invalidateAllCachedDecisions();
+    }
+
+    @Test
+    void aGapInvalidatesEveryCachedDecisionOnce() {
+        service.apply(List.of(revoke(1, "u1", "a")));
+
+        AccessEventService.ApplyResult result = service.apply(List.of(revoke(4, "u4", "d"), revoke(7, "u7", "e")));
+
+        assertThat(result).isEqualTo(new AccessEventService.ApplyResult(2, 0, true, 7));
+        verify(accessService, times(1)).invalidateAllCachedDecisions();
+        verify(accessService).invalidateCachedDecision("u4", "d");
+        verify(accessService).invalidateCachedDecision("u7", "e");
+        assertThat(meterRegistry.get("access_event_gaps_total").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void theFirstEventAfterStartupIsNotAGap() {
+        AccessEventService.ApplyResult result = service.apply(List.of(revoke(42, "u1", null)));
+
+        assertThat(result.gapDetected()).isFalse();
+        verify(accessService).invalidateCachedDecisionsForUser("u1");
+        verify(accessService, never()).invalidateAllCachedDecisions();
+    }
+
+    @Test
+    void acceptsAFreshlySignedCursorRead() throws Exception {
+        String timestamp = String.valueOf(NOW.minusSeconds(60).getEpochSecond());
+
+        assertThat(service.isCursorRequestValid(timestamp,
+                sign("GET /api/internal/access-events/cursor\n" + timestamp))).isTrue();
+    }
+
+    @Test
+    void rejectsStaleOrUntimestampedCursorReads() throws Exception {
+        String stale = String.valueOf(NOW.minus(Duration.ofMinutes(6)).getEpochSecond());
+
+        assertThat(service.isCursorRequestValid(stale, sign("GET /api/internal/access-events/cursor\n" + stale))).isFalse();
+        assertThat(service.isCursorRequestValid(null, sign(""))).isFalse();
+        assertThat(meterRegistry.get("access_events_stale_requests_total").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsACursorSignatureForAnotherTimestamp() throws Exception {
+        String timestamp = String.valueOf(NOW.getEpochSecond());
+        String other = String.valueOf(NOW.getEpochSecond() - 1);
+
+        assertThat(service.isCursorRequestValid(timestamp, sign("GET /api/internal/access-events/cursor\n" + other))).isFalse();
+        assertThat(service.isCursorRequestValid(timestamp, sign(""))).isFalse();
+    }
+}
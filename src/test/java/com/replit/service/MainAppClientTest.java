@@ -0,0 +1,83 @@
+package com.replit.service;
+
+import com.replit.dto.AccessCheckBatchRequest;
+import com.replit.dto.AccessCheckBatchResponse;
+import com.replit.dto.AccessCheckRequest;
+import com.replit.dto.AccessCheckResult;
+import com.replit.stub.StubMainApp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class MainAppClientTest {
+
+    private StubMainApp stub;
+    private ConnectionProvider connectionProvider;
+    private MainAppClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        stub = StubMainApp.start("denied");
+        connectionProvider = ConnectionProvider.create("main-app-test", 4);
+        client = new MainAppClient(WebClient.builder(), connectionProvider);
+        ReflectionTestUtils.setField(client, "mainAppUrl", stub.url());
+        ReflectionTestUtils.setField(client, "timeout", 2000);
+        ReflectionTestUtils.invokeMethod(client, "initializeWebClient");
+    }
+
+    @AfterEach
+    void stop() {
+        connectionProvider.dispose();
+        stub.close();
+    }
+
+    @Test
+    void checksSingleResources() {
+        assertThat(client.checkAccess("u1", "podcast-1").join()).isTrue();
+        assertThat(client.checkAccess("u1", "denied-1").join()).isFalse();
+        assertThat(stub.singleRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void checksABatchInOneRequest() {
+        AccessCheckBatchResponse response = client.checkAccessBatch(new AccessCheckBatchRequest(List.of(
+                new AccessCheckRequest("u1", "podcast-1"),
+                new AccessCheckRequest("u2", "denied-2")))).join();
+
+        assertThat(response.getResults())
+                .extracting(AccessCheckResult::getResourceId, AccessCheckResult::isGranted)
+                .containsExactly(
+                        tuple("podcast-1", true),
+                        tuple("denied-2", false));
+        assertThat(stub.batchRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void batcherFansOneBulkRequestOutToItsWaiters() {
+        AccessCheckBatcher batcher = new AccessCheckBatcher(client, true, Duration.ofHours(1), 3, new SimpleMeterRegistry());
+        try {
+            CompletableFuture<Boolean> first = batcher.submit("u1", "podcast-1");
+            CompletableFuture<Boolean> second = batcher.submit("u2", "denied-2");
+            CompletableFuture<Boolean> third = batcher.submit("u3", "podcast-3");
+
+            assertThat(first.join()).isTrue();
+            assertThat(second.join()).isFalse();
+            assertThat(third.join()).isTrue();
+            assertThat(stub.batchRequests()).isEqualTo(1);
+            assertThat(stub.singleRequests()).isZero();
+        } finally {
+            batcher.shutdown();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.replit.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DiskReadThroughCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger fills = new AtomicInteger();
+
+    private DiskReadThroughCache cache(long maxBytes, Duration evictionGrace) throws IOException {
+        return new DiskReadThroughCache(directory.toString(), DataSize.ofBytes(maxBytes), evictionGrace, meterRegistry);
+    }
+
+    // Writes the given number of bytes synchronously and counts the fills
+    private DiskReadThroughCache.Filler writing(int size) {
+        return target -> {
+            fills.incrementAndGet();
+            try {
+                Files.write(target, new byte[size]);
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        };
+    }
+
+    @Test
+    void concurrentMissesShareOneFill() throws IOException {
+        DiskReadThroughCache cache = cache(1000, Duration.ZERO);
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        DiskReadThroughCache.Filler slow = target -> {
+            fills.incrementAndGet();
+            return written.thenRun(() -> {
+                try {
+                    Files.write(target, new byte[100]);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        };
+
+        CompletableFuture<Path> first = cache.get("a", "v1", 100, slow);
+        CompletableFuture<Path> second = cache.get("a", "v1", 100, slow);
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+
+        written.complete(null);
+        assertThat(first.join()).isEqualTo(second.join()).exists().hasSize(100);
+        assertThat(fills).hasValue(1);
+        assertThat(meterRegistry.get("storage_cache_coalesced_total").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void cachedVersionsCompleteImmediatelyWithoutFilling() throws IOException {
+        DiskReadThroughCache cache = cache(1000, Duration.ZERO);
+        Path path = cache.get("a", "v1", 100, writing(100)).join();
+
+        CompletableFuture<Path> hit = cache.get("a", "v1", 100, writing(100));
+
+        assertThat(hit).isCompletedWithValue(path);
+        assertThat(fills).hasValue(1);
+        assertThat(meterRegistry.get("storage_cache_hits_total").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void aNewVersionReplacesTheOldOne() throws IOException {
+        DiskReadThroughCache cache = cache(1000, Duration.ZERO);
+        Path old = cache.get("a", "v1", 100, writing(100)).join();
+
+        Path current = cache.get("a", "v2", 100, writing(100)).join();
+        cache.get("b", "v1", 100, writing(100)).join();
+
+        assertThat(current).isNotEqualTo(old).exists();
+        assertThat(old).doesNotExist();
+        assertThat(meterRegistry.get("storage_cache_resident_bytes").gauge().value()).isEqualTo(200);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedObjectsBeyondTheBudget() throws IOException {
+        DiskReadThroughCache cache = cache(250, Duration.ZERO);
+        Path a = cache.get("a", "v1", 100, writing(100)).join();
+        Path b = cache.get("b", "v1", 100, writing(100)).join();
+        cache.get("a", "v1", 100, writing(100)).join();
+
+        cache.get("c", "v1", 100, writing(100)).join();
+        // Deletion happens on the next access once the (zero) grace has passed
+        cache.get("a", "v1", 100, writing(100)).join();
+
+        assertThat(a).exists();
+        assertThat(b).doesNotExist();
+        assertThat(meterRegistry.get("storage_cache_resident_bytes").gauge().value()).isEqualTo(200);
+        assertThat(meterRegistry.get("storage_cache_evictions_total").counter().count()).isEqualTo(1);
+
+        cache.get("b", "v1", 100, writing(100)).join();
+        assertThat(fills).hasValue(4);
+    }
+
+    @Test
+    void keepsEvictedFilesUntilTheGraceHasPassed() throws IOException {
+        DiskReadThroughCache cache = cache(150, Duration.ofHours(1));
+        Path a = cache.get("a", "v1", 100, writing(100)).join();
+
+        cache.get("b", "v1", 100, writing(100)).join();
+        cache.get("b", "v1", 100, writing(100)).join();
+
+        assertThat(a).exists();
+        assertThat(meterRegistry.get("storage_cache_retired_bytes").gauge().value()).isEqualTo(100);
+        assertThat(meterRegistry.get("storage_cache_entries").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void anIncompleteFillFailsAndIsNotCached() throws IOException {
+        DiskReadThroughCache cache = cache(1000, Duration.ZERO);
+
+        assertThatThrownBy(() -> cache.get("a", "v1", 100, writing(60)).join())
+                .isInstanceOf(CompletionException.class)
+                .hasRootCauseInstanceOf(IOException.class);
+
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+        cache.get("a", "v1", 100, writing(100)).join();
+        assertThat(fills).hasValue(2);
+    }
+}
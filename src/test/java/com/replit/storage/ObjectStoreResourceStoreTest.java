@@ -0,0 +1,123 @@
+package com.replit.storage;
+
+import com.replit.stub.StubObjectStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ObjectStoreResourceStoreTest {
+
+    @TempDir
+    Path bucket;
+
+    @TempDir
+    Path cacheDirectory;
+
+    private StubObjectStore stub;
+    private S3ObjectClient client;
+    private ObjectStoreResourceStore store;
+
+    @BeforeEach
+    void start() throws Exception {
+        stub = StubObjectStore.start(bucket);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        client = new S3ObjectClient(stub.url(), "audio", "us-east-1", "", "",
+                Duration.ofSeconds(5), 4, WebClient.builder());
+        DiskReadThroughCache diskCache = new DiskReadThroughCache(cacheDirectory.toString(), DataSize.ofMegabytes(10),
+                Duration.ZERO, meterRegistry);
+        store = new ObjectStoreResourceStore(client, diskCache, "", DataSize.ofKilobytes(16), 3,
+                Duration.ofSeconds(10), Duration.ofSeconds(5), Duration.ofMinutes(1), 100, meterRegistry);
+    }
+
+    @AfterEach
+    void stop() {
+        client.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void fetchesAnObjectInRangedPartsIntoTheCache() throws Exception {
+        byte[] content = new byte[100_000];
+        new Random(42).nextBytes(content);
+        Files.write(bucket.resolve("podcast-1.mp3"), content);
+
+        ResourceStore.StoredObject stored = store.open("podcast-1").join();
+
+        assertThat(Files.readAllBytes(stored.path())).isEqualTo(content);
+        assertThat(stored.metadata().size()).isEqualTo(content.length);
+        // 100 000 bytes in 16 KB parts
+        assertThat(stub.getRequests()).isEqualTo(7);
+        assertThat(stub.headRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsAShortPartEvenWhenLaterPartsReachTheFullSize() throws Exception {
+        byte[] content = new byte[100_000];
+        new Random(42).nextBytes(content);
+        Files.write(bucket.resolve("podcast-1.mp3"), content);
+        stub.breakFirstPart(StubObjectStore.Fault.SHORT_BODY);
+
+        assertThatThrownBy(() -> store.open("podcast-1").join())
+                .isInstanceOf(CompletionException.class)
+                .hasMessageContaining("bytes");
+        assertThat(cachedFiles()).isEmpty();
+
+        // Nothing was cached, so the next request fetches a complete copy
+        stub.breakFirstPart(StubObjectStore.Fault.NONE);
+        assertThat(Files.readAllBytes(store.open("podcast-1").join().path())).isEqualTo(content);
+    }
+
+    @Test
+    void rejectsAPartWithAnotherContentRange() throws Exception {
+        Files.write(bucket.resolve("podcast-1.mp3"), new byte[100_000]);
+        stub.breakFirstPart(StubObjectStore.Fault.WRONG_RANGE);
+
+        assertThatThrownBy(() -> store.open("podcast-1").join())
+                .isInstanceOf(CompletionException.class)
+                .hasMessageContaining("Content-Range");
+        assertThat(cachedFiles()).isEmpty();
+    }
+
+    private List<Path> cachedFiles() throws Exception {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    void answersCachedObjectsWithoutAnyRequest() throws Exception {
+        Files.write(bucket.resolve("podcast-1.mp3"), new byte[1000]);
+        Path path = store.open("podcast-1").join().path();
+
+        CompletableFuture<ResourceStore.StoredObject> again = store.open("podcast-1");
+
+        assertThat(again).isDone();
+        assertThat(again.join().path()).isEqualTo(path);
+        assertThat(stub.headRequests()).isEqualTo(1);
+        assertThat(stub.getRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void completesWithNullForMissingObjects() {
+        assertThat(store.open("missing").join()).isNull();
+        assertThat(store.open("missing").join()).isNull();
+        assertThat(stub.headRequests()).isEqualTo(1);
+        assertThat(stub.getRequests()).isZero();
+    }
+}
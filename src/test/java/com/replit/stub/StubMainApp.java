@@ -0,0 +1,109 @@
+package com.replit.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.replit.dto.AccessCheckBatchRequest;
+import com.replit.dto.AccessCheckBatchResponse;
+import com.replit.dto.AccessCheckRequest;
+import com.replit.dto.AccessCheckResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the main application's internal access API, on an ephemeral
+ * loopback port. Every resource is granted except those whose id starts with the denied
+ * prefix.
+ */
+public final class StubMainApp implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String deniedPrefix;
+    private final AtomicLong singleRequests = new AtomicLong();
+    private final AtomicLong batchRequests = new AtomicLong();
+
+    private StubMainApp(String deniedPrefix) throws IOException {
+        this.deniedPrefix = deniedPrefix;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/internal/check-access", this::checkAccess);
+        server.createContext("/api/internal/check-access/batch", this::checkAccessBatch);
+        server.createContext("/health", exchange -> respond(exchange, 200, "UP"));
+        server.start();
+    }
+
+    public static StubMainApp start(String deniedPrefix) throws IOException {
+        return new StubMainApp(deniedPrefix);
+    }
+
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long singleRequests() {
+        return singleRequests.get();
+    }
+
+    public long batchRequests() {
+        return batchRequests.get();
+    }
+
+    private void checkAccess(HttpExchange exchange) throws IOException {
+        singleRequests.incrementAndGet();
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        respond(exchange, 200, String.valueOf(decide(query.get("resourceId"))));
+    }
+
+    private void checkAccessBatch(HttpExchange exchange) throws IOException {
+        batchRequests.incrementAndGet();
+        AccessCheckBatchRequest request = objectMapper.readValue(exchange.getRequestBody(), AccessCheckBatchRequest.class);
+        List<AccessCheckResult> results = new ArrayList<>(request.getChecks().size());
+        for (AccessCheckRequest check : request.getChecks()) {
+            results.add(new AccessCheckResult(check.getUserId(), check.getResourceId(), decide(check.getResourceId())));
+        }
+        respond(exchange, 200, objectMapper.writeValueAsString(new AccessCheckBatchResponse(results)));
+    }
+
+    private boolean decide(String resourceId) {
+        return resourceId != null && !resourceId.startsWith(deniedPrefix);
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> values = new HashMap<>();
+        if (rawQuery == null) {
+            return values;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
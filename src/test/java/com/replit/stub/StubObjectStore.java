@@ -0,0 +1,145 @@
+package com.replit.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for an S3-compatible bucket, on an ephemeral loopback port, serving
+ * the files of a directory as {@code /<bucket>/<key>}. Supports what {@code S3ObjectClient}
+ * uses: {@code HEAD} and single-range {@code GET} with ETag and Last-Modified. Requests
+ * are not authenticated. {@link #breakFirstPart} makes the range starting at offset 0
+ * come back wrong, to test that clients reject it.
+ */
+public final class StubObjectStore implements AutoCloseable {
+
+    public enum Fault {
+        NONE,
+        // Correct Content-Range, but the body stops 100 bytes early
+        SHORT_BODY,
+        // A Content-Range starting one byte later than requested
+        WRONG_RANGE
+    }
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final HttpServer server;
+    private final Path root;
+    private final AtomicLong headRequests = new AtomicLong();
+    private final AtomicLong getRequests = new AtomicLong();
+    private volatile Fault firstPartFault = Fault.NONE;
+
+    private StubObjectStore(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public static StubObjectStore start(Path root) throws IOException {
+        return new StubObjectStore(root);
+    }
+
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public void breakFirstPart(Fault fault) {
+        this.firstPartFault = fault;
+    }
+
+    public long headRequests() {
+        return headRequests.get();
+    }
+
+    public long getRequests() {
+        return getRequests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            (head ? headRequests : getRequests).incrementAndGet();
+
+            // The first segment names the bucket, the rest is the key
+            String path = exchange.getRequestURI().getRawPath();
+            int keyStart = path.indexOf('/', 1);
+            Path file = keyStart < 0 ? root
+                    : root.resolve(URLDecoder.decode(path.substring(keyStart + 1), StandardCharsets.UTF_8)).normalize();
+            if (file.equals(root) || !file.startsWith(root) || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            long size = Files.size(file);
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            exchange.getResponseHeaders().set("ETag", "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"");
+            exchange.getResponseHeaders().set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(Instant.ofEpochMilli(lastModified).atOffset(ZoneOffset.UTC)));
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", Long.toString(size));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            long start = 0;
+            long end = size - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                Matcher matcher = RANGE.matcher(range);
+                if (!matcher.matches() || Long.parseLong(matcher.group(1)) >= size) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                start = Long.parseLong(matcher.group(1));
+                end = Math.min(Long.parseLong(matcher.group(2)), size - 1);
+                status = 206;
+                Fault fault = start == 0 ? firstPartFault : Fault.NONE;
+                long declaredStart = fault == Fault.WRONG_RANGE ? start + 1 : start;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + declaredStart + "-" + end + "/" + size);
+                if (fault == Fault.SHORT_BODY) {
+                    end = Math.max(start, end - 100);
+                }
+            }
+
+            long length = end - start + 1;
+            exchange.sendResponseHeaders(status, length);
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream out = exchange.getResponseBody()) {
+                in.skipNBytes(start);
+                byte[] chunk = new byte[8192];
+                for (long remaining = length; remaining > 0; ) {
+                    int read = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                    if (read < 0) {
+                        break;
+                    }
+                    out.write(chunk, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}